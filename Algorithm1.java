@@ -1,17 +1,31 @@
 package research;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.ArrayList;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Main program
@@ -22,75 +36,126 @@ import java.util.logging.Logger;
  */
 public class Algorithm1 {
 
-    private static final String INPUT_PATH = "input/";
-    private static final String OUTPUT_PATH = "output-D(stay-hh-conflict)/";
+    /**
+     * the export to read, a directory or a .zip of the CSVs, chosen with
+     * -Dinput=...
+     */
+    private static final String INPUT_PATH = System.getProperty("input", "input/");
+
+    /**
+     * the export at INPUT_PATH, opened by main
+     */
+    private static HmisExport input;
+
+    /**
+     * the version of the algorithm to run, chosen with -Dvariant=...
+     */
+    private static final MatchVariant VARIANT
+            = MatchVariant.forName(System.getProperty("variant", "stay-and-hhid-conflict"));
+
+    private static final String OUTPUT_PATH = VARIANT.getOutputPath();
 
     //
     //CONSTANTS THAT CONCERN DATES
     //
+
     /**
-     * the standard date format for our data
+     * maps the personalKey of each enrolled client to its index in STAYS and
+     * HOUSEHOLDS, in the order of its first enrollment
      */
-    private static final DateTimeFormatter DATE_FORMAT
-            = DateTimeFormatter.ofPattern("MM/dd/yyyy"); //02/26/2018 by TL
+    private static final LongIntMap ENROLLED_CLIENTS = new LongIntMap();
 
     /**
-     * an atypical date format for our data
+     * personal ids of enrollments that are not all digits, for personalKey
      */
-    private static final DateTimeFormatter NEW_DATE_FORMAT
-            = DateTimeFormatter.ofPattern("yyyy-MM-dd"); //02/26/2018 by TL
+    private static final StringDictionary PERSONAL_IDS = new StringDictionary();
 
     /**
-     * All enrollment dates: needed for twin checking
+     * maps the personalKey of each enrolled client to the epoch day of its
+     * first entry: needed for twin checking
      */
-    private static final HashMap<String, ArrayList<LocalDate>> ENTRY_DATES = new HashMap<>();
+    private static final LongIntMap FIRST_ENTRIES = new LongIntMap();
 
     /**
-     * maps personal ids to reliable dates of entry and exit
+     * reliable stays of each enrolled client, from dates of entry and exit
      */
-    private static final HashMap<String, ArrayList<LocalDate>> EXIT_DATES = new HashMap<>();
+    private static final StayIndex STAYS = new StayIndex();
 
     /**
-     * The set of all reliable project exit ids
+     * maps the key of each enrollment id, from enrollmentKey, to the epoch day
+     * of its exit
      */
-    private static final HashMap<String, LocalDate> EXIT_IDS = new HashMap<>();
+    private static final LongIntMap EXIT_DATES = new LongIntMap();
 
-    private static HashSet<String> stayConflictClientsOne = new HashSet();
+    /**
+     * the exit date of an enrollment with no exit yet
+     */
+    private static final int OPEN_STAY = Integer.MAX_VALUE;
+
+    /**
+     * the exit date of an enrollment whose exit date is not to be trusted
+     */
+    private static final int UNRELIABLE_EXIT = Integer.MIN_VALUE;
+
+    /**
+     * enrollment ids that are not all digits, for enrollmentKey
+     */
+    private static final StringDictionary ENROLLMENT_IDS = new StringDictionary();
 
-    private static HashSet<String> houseHoldIDConflictClientsOne = new HashSet();
     /**
      * maps personal ids to destination code of exit
      */
     private static final HashMap<String, ArrayList<LocalDate>> EXIT_CODES = new HashMap<>();
 
     /**
-     * maps personal ids to household ids
+     * the codes of every household each enrolled client was enrolled in
      */
-    private static final HashMap<String, String> HOUSEHOLD_IDS = new HashMap<>();
+    private static final HouseholdIndex HOUSEHOLDS = new HouseholdIndex();
 
     /**
      * indicates that DoB was not given
      */
     private static final String SPECIAL_DATE = "1/1/1900";
 
+    /**
+     * rows of the input that were not loaded, written to OUTPUT_PATH +
+     * "Rejects.csv"
+     */
+    private static final RejectLog REJECTS = new RejectLog(new File(OUTPUT_PATH + "Rejects.csv"));
+
     //
     //CLIENT MATCHING VARS
     //
     /**
-     * dynamic list of unique clients
+     * all clients, in the order they were read
+     */
+    private static ClientTable clients = new ClientTable();
+
+    /**
+     * maps personal ids to the row of the client in clients
+     */
+    private static HashMap<String, Integer> ordinals = new HashMap<>();
+
+    /**
+     * duplicate groups of clients, according to our tests
+     */
+    private static DisjointSet clusters = new DisjointSet();
+
+    /**
+     * for the root of each duplicate group, the personal id that every
+     * member of the group is changed to
      */
-    private static ArrayList<Client> clients = new ArrayList<>();
+    private static String[] canonicalIds;
 
     /**
-     * maps personal ids that represent duplicate entries, according to our
-     * tests
+     * blocks of previous clients that a new client could match
      */
-    private static HashMap<String, String> matchingClients = new HashMap<>();
+    private static BlockingIndex blockingIndex = new BlockingIndex(clients);
 
     /**
-     * maps an original client to a list of matching clients
+     * clients grouped by last name and DoB, for the twin checks
      */
-    private static HashMap<Client, ArrayList<Client>> map = new HashMap<>();
+    private static final TwinIndex TWINS = new TwinIndex();
 
     /**
      * Maps SSN to a list of clients with that SSN Lists the groups of clients
@@ -109,6 +174,73 @@ public class Algorithm1 {
      */
     private static final boolean WRITE = true;
 
+    /**
+     * if true, the new personal id of every client is also written to
+     * OUTPUT_PATH + "Crosswalk.bin", for IdCrosswalk, and "Crosswalk.csv";
+     * a run started with --resume goes on from the crosswalk
+     */
+    private static final boolean CROSSWALK = true;
+
+    /**
+     * if true, the output files are written to one zip, OUTPUT_PATH +
+     * "Output.zip"
+     */
+    private static final boolean ZIP_OUTPUT = false;
+
+    /**
+     * if true, the loaded clients are saved to SNAPSHOT_PATH, and later runs
+     * on the same Client, Enrollment and Exit files read the snapshot instead
+     */
+    private static final boolean SNAPSHOTS = true;
+
+    private static final String SNAPSHOT_PATH = "cache/snapshot.bin";
+
+    /**
+     * if true, pairs are scored on all cores before the duplicate groups are
+     * built; otherwise each client is matched as it is read
+     */
+    private static final boolean PARALLEL = true;
+
+    /**
+     * number of threads that score pairs in parallel
+     */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * number of clients scored by one parallel task
+     */
+    private static final int SCORE_BATCH_SIZE = 1024;
+
+    /**
+     * Client.csv is loaded in stages: parse, on one thread; normalize, which
+     * does the work of each client that does not depend on the clients
+     * before it, encoding its fields and working out its signature and block
+     * keys; and match, on one thread so clients are added, indexed and
+     * matched in file order. These are the threads of normalize, and the
+     * depth of the queue into each stage, in batches.
+     */
+    private static final int NORMALIZE_THREADS = Math.max(1, THREADS / 2);
+    private static final int NORMALIZE_QUEUE = 8;
+    private static final int MATCH_QUEUE = 8;
+
+    /**
+     * number of clients in one batch of the stages
+     */
+    private static final int STAGE_BATCH_SIZE = 4096;
+
+    /**
+     * number of threads that write the output files, and the size of the
+     * ranges a large file is split into so that its ranges are written in
+     * parallel
+     */
+    private static final int REWRITE_THREADS = THREADS;
+    private static final long REWRITE_RANGE_SIZE = 64L << 20;
+
+    /**
+     * bits recording which tests a scored pair passed
+     */
+    private static final int MATCH1 = 1, MATCH2 = 2;
+
     //
     // VARS FOR FEATURE ACCURACY
     //
@@ -124,19 +256,17 @@ public class Algorithm1 {
     private static long[] twinTests = new long[4];
 
     /**
-     * Counts the number of matches that were rejected due to stay conflict
+     * if true, every filter runs for every pair so that the rejection counts
+     * of each filter are complete; otherwise a test stops at the first filter
+     * that rejects a pair
      */
-    private static long stayConflictCountOne = 0; //02/26/18 by TL
-    private static long stayConflictCountTwo = 0; //02/26/18 by TL
+    private static final boolean DIAGNOSTICS = false;
+
     /**
-     * Counts the number of matches that were rejected due to same household id
+     * the two match tests of the variant
      */
-    private static long sameHouseHoldOne = 0; //02/27/18 by TL
-    private static long sameHouseHoldTwo = 0; //02/27/18 by TL
-
-    private static long twinCheckOne = 0; //02/26/18 by TL
-
-    private static long twinCheckTwo = 0; //02/26/18 by TL
+    private static final MatchPipeline TEST1 = VARIANT.createTest1(TWINS, DIAGNOSTICS);
+    private static final MatchPipeline TEST2 = VARIANT.createTest2(TWINS, DIAGNOSTICS);
 
     private static long countOfUnique = 0;
 
@@ -144,336 +274,269 @@ public class Algorithm1 {
      * Reads the client.csv file De-duplicates entries Writes the new list of
      * entries to an output file
      *
-     * @throws java.io.FileNotFoundException
-     * @throws java.io.UnsupportedEncodingException
+     * @throws java.io.IOException
      * @main
      */
-    public static void main(String[] args) throws FileNotFoundException, UnsupportedEncodingException {
-
-        getEnrollmentData();
-
-        //reads the file
-        Scanner sc = new Scanner(new File(INPUT_PATH + "Client.csv"), "UTF-8");
+    public static void main(String[] args) throws IOException {
 
-        System.out.println("READING FROM: " + INPUT_PATH + "Client.csv ...");
+        //a run started with --resume after one that stopped while writing
+        //skips matching, and writes only the outputs that are not complete
+        boolean resume = Arrays.asList(args).contains("--resume");
 
-        // split it up by commas (considering it is a CSV)
-        sc = sc.useDelimiter("[,\n]");
+        input = new HmisExport(new File(INPUT_PATH));
 
-        // column header
-        String headers = sc.nextLine();
-        StringBuilder sb = new StringBuilder();
-        sb = sb.append(headers).append('\n');
+        OutputManifest manifest = new OutputManifest(new File(OUTPUT_PATH + "Manifest.csv"),
+                input.getSources(input.getCsvNames().toArray(new String[0])));
+        File crosswalk = new File(OUTPUT_PATH + "Crosswalk.bin");
 
-        System.out.println("DEDUPLICATING ...");
-
-        int scanCount = 0;
-
-        StringBuilder twinsOutput = new StringBuilder(Client.CLIENT_HEADER);
-
-        //for each entry
-        while (sc.hasNextLine()) {
-
-            if (scanCount % 1000 == 0) {
-                System.out.println(scanCount);
+        if (resume && manifest.load() && manifest.isComplete(crosswalk)) {
+            System.out.println("RESUMING FROM " + manifest.getFile());
+            restoreClusters(crosswalk);
+        } else {
+            if (resume) {
+                System.out.println("NOTHING TO RESUME FROM " + manifest.getFile());
             }
-
-            String line = sc.nextLine();
-            String[] array = line.split(",");
-
-            if (array.length == 0) {
-                break;
+            manifest.reset();
+            deduplicate();
+            if (WRITE && CROSSWALK) {
+                manifest.complete(crosswalk, writeCrosswalk());
             }
+        }
 
-            String dobS = array[8];
-
-            //if a client has the special
-            if (!SPECIAL_DATE.equals(dobS)) {
-
-                String personalId = array[0];
-
-                ArrayList<LocalDate> clientEntryDates = ENTRY_DATES.get(personalId),
-                        clientExitDates = EXIT_DATES.get(personalId);
-
-                /*
-                 System.out.println(personalId);
-                 System.out.println(clientEntryDates);
-                 System.out.println(clientExitDates);
-                
-                
-                 if (clientEntryDates != null) {
-                 for (int i = 0; scanCount < 5000 && i < clientEntryDates.size(); i++) {
-                 System.out.println(ChronoUnit.DAYS.between(clientEntryDates.get(i), clientExitDates.get(i)));
-                 //System.out.print(ChronoUnit.DAYS.between(clientEntryDates.get(i), clientExitDates.get(i)) + "           ");
-                 scanCount++;
-                 }
-                 }
-
-                
-                 */
-                String fName = array[1];
-                String lName = array[3];
-                String suffix = array[4];
-                String nameDataQuality = array[5];
-
-                String ssn = array[6];
-                String ssnDataQuality = array[7];
-
-                LocalDate dob;
-                try {
-                    dob = LocalDate.parse(dobS, DATE_FORMAT);
-                } catch (DateTimeParseException e) {
-                    dob = LocalDate.parse(dobS, NEW_DATE_FORMAT);
-                    dobS = dob.format(DATE_FORMAT);
-                }
-
-                String dobDataQuality = array[9];
+        if (WRITE) {
 
-                String race = array[10] + array[11] + array[12]
-                        + array[13] + array[14];
+            System.out.println("WRITING OUTPUT FILES ...");
+            writeOutput(manifest);
 
-                String raceDataQuality = array[15];
+        }
 
-                String gender = array[17];
+        input.close();
 
-                Client client = new Client(
-                        personalId, fName, lName, suffix, nameDataQuality,
-                        ssn, ssnDataQuality,
-                        dobS, dob, dobDataQuality, gender, race, raceDataQuality,
-                        line
-                );
+        /*
+        
+        System.out.println("");
+        System.out.println("Clients who did not have a twin: " + twinTests[0]);
+        System.out.println("Clients who had a twin (1): " + twinTests[1]);
+        System.out.println("Clients who had a twin (2): " + twinTests[2]);
+        System.out.println("Clients who had a twin (1, 2): " + twinTests[3]);
 
-                //if client is new, then add client to dynamic list
-                boolean isNew = isNewClient(client);
-                //if (isNew) {
-                clients.add(client);
-                //}
+         */
+    }//end main
 
-                if (isNew) {
-                    countOfUnique++;
-                }
+    /**
+     * Loads and matches the clients, and chooses the new personal id of each
+     * duplicate group
+     */
+    private static void deduplicate() throws IOException {
 
-                scanCount++;
+        //the export end date of Export.csv ends the open stays
+        String[] sources = input.getCsvNames().contains("Export.csv")
+                ? new String[]{"Client.csv", "Enrollment.csv", "Exit.csv", "Export.csv"}
+                : new String[]{"Client.csv", "Enrollment.csv", "Exit.csv"};
+        SnapshotCache snapshot = new SnapshotCache(new File(SNAPSHOT_PATH), input.getSources(sources));
 
-            }//end special date condition
+        System.out.println("DEDUPLICATING ...");
 
-        }//END WHILE
+        if (SNAPSHOTS && snapshot.restore(clients)) {
+            System.out.println("READ FROM SNAPSHOT: " + SNAPSHOT_PATH);
+            for (int row = 0; row < clients.size(); row++) {
+                matchClient(row);
+            }
+        } else {
+            //clients are matched as they are loaded
+            loadInputs();
+            if (SNAPSHOTS) {
+                snapshot.save(clients);
+            }
+        }
 
-        sc.close();
+        if (PARALLEL) {
+            System.out.println("MATCHING ON " + THREADS + " THREADS ...");
+            countOfUnique = buildGroups(scorePairs());
+        }
 
         System.out.println("Count of unique clients = " + countOfUnique);
-        System.out.println("Number of stay conflicts found in T1 = " + stayConflictCountOne); //02/26/18 by TL
-        System.out.println("Number of stay conflicts found in T2 = " + stayConflictCountTwo); //02/26/18 by TL
-        System.out.println("Number of Household conflicts found in T1 = " + sameHouseHoldOne); //02/27/18 by TL
-        System.out.println("Number of Household conflicts found in T2 = " + sameHouseHoldTwo); //02/27/18 by TL
-        System.out.println("twins found in test one: " + twinCheckOne); //02/26/18 by TL
-        System.out.println("twins found in test two: " + twinCheckTwo); //02/26/18 by TL
-
-
-        //an arraylist to store accurate entries that will replace inaccurate entries
-        ArrayList<Client> replacements = new ArrayList<>();
-        ArrayList<ArrayList<Client>> groups = new ArrayList<>();
+        TEST1.printRejections();
+        TEST2.printRejections();
 
         //among a duplicate group
         //we should select an entry with the most common DoB
-        for (Client firstClient : map.keySet()) {
-
-            //get duplicate group
-            ArrayList<Client> group = map.get(firstClient);
-
-            //determine first entry with majority DoB
-            Client majDob = getClientWithMajDob(group);
+        resolveClusters();
+    }
 
-            replacements.add(firstClient);
-            replacements.add(majDob);
-            groups.add(group);
+    /**
+     * Restores the new personal id of every client from the crosswalk of an
+     * earlier run, each client in a set of its own
+     */
+    private static void restoreClusters(File file) throws IOException {
+        try (IdCrosswalk crosswalk = new IdCrosswalk(file)) {
+            canonicalIds = new String[crosswalk.size()];
+            for (int i = 0; i < crosswalk.size(); i++) {
+                int ordinal = clusters.makeSet();
+                ordinals.put(crosswalk.getOldId(i), ordinal);
+                canonicalIds[ordinal] = crosswalk.getNewId(i);
+            }
         }
+        System.out.println("Count of clients = " + canonicalIds.length);
+    }
 
-        for (int i = 0; i < groups.size(); i++) {
+    /**
+     * Indexes a client that has been added to the table, and matches it to
+     * the clients before it unless matching is done in parallel afterwards
+     */
+    private static void matchClient(int row) {
+        matchClient(row, null, 0);
+    }
 
-            //remove first client
-            map.put(replacements.get(2 * i), null);
+    /**
+     * As matchClient, with the block keys worked out by the normalize stage
+     *
+     * @param blockKeys holds the BlockingIndex.KEYS keys of the client from
+     * offset, or is null to work them out from the table
+     */
+    private static void matchClient(int row, long[] blockKeys, int offset) {
 
-            //map majDob client
-            map.put(replacements.get(2 * i + 1), groups.get(i));
+        if (row % 1000 == 0) {
+            System.out.println(row);
         }
 
-        if (WRITE) {
-
-            System.out.println("WRITING OUTPUT FILES ...");
-            // A CSV provided by HUD
-
-            // Get all other files
-            File[] files = new File(INPUT_PATH).listFiles();
-            for (File file : files) {
-                String filename = file.getName();
-                // Get all CSVs
-                if (filename.endsWith(".csv")) {
-                    String noExtension = filename.substring(0, filename.indexOf(".csv"));
-                    // A CSV provided by HUD
-
-                    if (!noExtension.endsWith("Output")) {
-                        System.out.print("Writing to " + OUTPUT_PATH + noExtension + "Output.csv ... ");
-                        changePersonalIds(filename);
-                        System.out.println("DONE");
-                    }
-
-                }
-            }//end file loop
-
+        //the set of the client is made before it is matched, so the matches
+        //are merged into its own set; rows and ordinals are the same numbers
+        ordinals.put(clients.getPersonalId(row), clusters.makeSet());
+        TWINS.add(row, clients.getlNameCode(row), clients.getDobEpochDay(row), clients.getFirstEntry(row));
+
+        //if client is new, then add client to dynamic list
+        //clients are matched after reading when matching in parallel
+        boolean isNew = PARALLEL || isNewClient(row);
+        //if (isNew) {
+        if (blockKeys == null) {
+            blockingIndex.add(row);
+        } else {
+            blockingIndex.add(row, blockKeys, offset);
         }
+        //}
 
-        /*
-        
-        System.out.println("");
-        System.out.println("Clients who did not have a twin: " + twinTests[0]);
-        System.out.println("Clients who had a twin (1): " + twinTests[1]);
-        System.out.println("Clients who had a twin (2): " + twinTests[2]);
-        System.out.println("Clients who had a twin (1, 2): " + twinTests[3]);
-
-         */
-    }//end main
-
-    /**
-     * Determine if two clients have any conflicting stay time in distinct
-     * projects
-     */
-    private static boolean hasStayConflict(
-            ArrayList<LocalDate> enrollments1, ArrayList<LocalDate> exits1,
-            ArrayList<LocalDate> enrollments2, ArrayList<LocalDate> exits2
-    ) {
-        if (enrollments1 == null || enrollments2 == null) {
-            return false;
-        }
-        //02/26/18 by TL
-        if (exits1 == null) {
-            exits1 = new ArrayList();
-            LocalDate exit = LocalDate.of(0000, 01, 01);
-            exits1.add(exit);
-        }
-        if (exits2 == null) {
-            exits2 = new ArrayList();
-            LocalDate exit = LocalDate.of(0000, 01, 01);
-            exits2.add(exit);
-        }
-        //end adding
-        for (int i = 0; i < enrollments1.size(); i++) {
-            LocalDate en1 = enrollments1.get(i), ex1 = exits1.get(i);
-            for (int j = 0; j < enrollments2.size(); j++) {
-                LocalDate en2 = enrollments2.get(j), ex2 = exits2.get(j);
-
-                if (en2.isBefore(en1)) {
-                    if (ex2.isAfter(en1)) {
-                        return true;       // en2 and ex2 surround en1
-                    }
-                } else if (en2.isBefore(ex1)) {
-                    return true;           // en2 is between en1 and ex1
-                }
-                /*
-                 //02/26/18 by TL
-                 if (ex1.isBefore(ex2)) {
-                 if (ex1.isAfter(en2)) {
-                 return true;
-                 }
-                 //en1 and ex1 suround ex2    
-                 } else if (en1.isBefore(ex2)) {
-                 return true;
-                 }
-                 */
-                //end adding
-            }
+        if (isNew && !PARALLEL) {
+            countOfUnique++;
         }
-
-        return false;
-
     }
 
     /**
      * Determine, from a list of clients, the client with the mode DoB
      *
-     * @param grp A list of clients, representing a duplicate group
+     * @param grp The rows of the clients in a duplicate group, in file order
      *
-     * @return The first client with the most common DoB
+     * @return The row of the first client with the most common DoB
      */
-    private static Client getClientWithMajDob(List<Client> grp) {
+    private static int getClientWithMajDob(int[] grp) {
         //frequency map of the dobs
-        HashMap<LocalDate, Integer> dobFreqs = new HashMap<>();
+        HashMap<Integer, Integer> dobFreqs = new HashMap<>();
 
         //count dob freqs
-        for (Client c : grp) {
-            dobFreqs.putIfAbsent(c.getDob(), 0);
-            Integer f = dobFreqs.get(c.getDob());
-            f++;
+        for (int c : grp) {
+            dobFreqs.merge(clients.getDobEpochDay(c), 1, Integer::sum);
         }
 
-        //find most frequent dob
+        //find first client with the most frequent dob
+        int majDob = -1;
         int maxF = -1;
-        LocalDate majDob = null;
-        for (LocalDate ld : dobFreqs.keySet()) {
-            if (dobFreqs.get(ld) > maxF) {
-                majDob = ld;
-                maxF = dobFreqs.get(ld);
+        for (int c : grp) {
+            int f = dobFreqs.get(clients.getDobEpochDay(c));
+            if (f > maxF) {
+                majDob = c;
+                maxF = f;
             }
         }
 
-        //find first client with
-        for (Client c : grp) {
-            if (c.getDob().equals(majDob)) {
-                return c;
+        return majDob;
+    }
+
+    /**
+     * Chooses the personal id that each duplicate group is changed to: the
+     * first member, in file order, with the most common DoB of the group
+     */
+    private static void resolveClusters() {
+        int n = clusters.size();
+        canonicalIds = new String[n];
+
+        //group sizes, then the start of each group in members
+        int[] roots = new int[n];
+        int[] starts = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            roots[i] = clusters.find(i);
+            starts[roots[i] + 1]++;
+        }
+        for (int r = 0; r < n; r++) {
+            starts[r + 1] += starts[r];
+        }
+
+        //ordinals sorted by group, in file order within each group
+        int[] members = new int[n];
+        int[] next = Arrays.copyOf(starts, n);
+        for (int i = 0; i < n; i++) {
+            members[next[roots[i]]++] = i;
+        }
+
+        for (int r = 0; r < n; r++) {
+            if (starts[r + 1] - starts[r] == 1) {
+                canonicalIds[r] = clients.getPersonalId(r);
+            } else if (starts[r + 1] - starts[r] > 1) {
+                int[] group = Arrays.copyOfRange(members, starts[r], starts[r + 1]);
+                canonicalIds[r] = clients.getPersonalId(getClientWithMajDob(group));
             }
         }
+    }
 
-        //this case should not be reached
-        return null;
+    /**
+     * Resolves a personal id to the personal id of its duplicate group
+     *
+     * @return the personal id of the group, or the given id if it does not
+     * belong to a client that was matched
+     */
+    private static String getCanonicalId(String personalId) {
+        Integer ordinal = ordinals.get(personalId);
+        if (ordinal == null) {
+            return personalId;
+        }
+        return canonicalIds[clusters.find(ordinal)];
     }
 
     /**
      * Run the algorithm
      *
-     * @param newClient the current line of the file
+     * @param newClient the row of the client just read, which is also its
+     * ordinal in clusters; its set must already be made
      *
      * @return if newClient is new (true) or not (false)
      */
-    private static boolean isNewClient(Client newClient) {
+    private static boolean isNewClient(int newClient) {
 
         // KG 2018-03-13
         // Assume that the client is new until a match is found
         // Both tests will execute to completion
         boolean duplicateFound = false;
 
-        //for each previously entered client
-        for (Client otherClient : clients) {
+        //only previous clients that share a block can pass either test
+        int[] candidates = blockingIndex.candidates(newClient, newClient);
 
-            //if the clients match
-            if (isMatch1(newClient, otherClient)) {
+        ClientPair pair = new ClientPair(clients);
 
-                //clients did not fail any of the match criteria
-                matchingClients.put(newClient.getPersonalId(), otherClient.getPersonalId());
+        //for each previously entered client that could match
+        for (int candidate : candidates) {
+            pair.set(newClient, candidate);
 
-                // Add newClient to an ArrayList for the main client
-                ArrayList<Client> temp = map.get(otherClient);
-                if (temp == null) {
-                    temp = new ArrayList<>();
-                    map.put(otherClient, temp);
-                }
-                temp.add(newClient);
+            //if the clients match
+            if (TEST1.matches(pair)) {
 
+                //clients did not fail any of the match criteria
+                clusters.union(newClient, candidate);
                 duplicateFound = true;
             }
 
-            if (isMatch2(newClient, otherClient)) {
-
-                // Link the main client's PID to the Client
-                matchingClients.put(newClient.getPersonalId(), otherClient.getPersonalId());
+            if (TEST2.matches(pair)) {
 
                 // Same thing as before
-                ArrayList<Client> temp = map.get(otherClient);
-                if (temp == null) {
-                    temp = new ArrayList<>();
-                    map.put(otherClient, temp);
-                }
-                temp.add(newClient);
-
+                clusters.union(newClient, candidate);
                 duplicateFound = true;
 
             }
@@ -484,339 +547,282 @@ public class Algorithm1 {
     }
 
     /**
-     * Run test 1
-     *
+     * Phase one of parallel matching: runs both tests on every candidate pair
      *
+     * Pairs are scored independently, so the work is split across a
+     * ForkJoinPool. Nothing but the filter counters is modified.
      *
-     * @return true if a match is detected false if not
-     *
+     * @return for each client, the earlier clients it matched, ascending, each
+     * shifted left by two and tagged with the MATCH1 and MATCH2 bits
      */
-    static boolean isMatch1(Client newClient, Client client) {
-
-        // KG 2018-03-14
-        // Assume that the client is a match, until it is rejected by a filter
-        boolean matchFailed = false;
+    private static int[][] scorePairs() {
+        int[][] scores = new int[clients.size()][];
 
-        //reject match if ssns are different
-        if (!hasSsnMatch(newClient.getSsn(), client)) {
-            matchFailed = true;
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            pool.invoke(new ScoreTask(scores, 0, clients.size()));
+        } finally {
+            pool.shutdown();
         }
 
-        /*
-        String[] newClientInfo = {newClient.getfName(), newClient.getlName(),
-            newClient.getDob().toString()};
-        String[] clientInfo = {client.getfName(), client.getlName(),
-            client.getGender(), client.getDob().toString()};
-         */
-        String[] newClientInfo = {newClient.getfName(), newClient.getlName(),
-            newClient.getGender(), newClient.getDob().getMonth() + ""};
-        String[] clientInfo = {client.getfName(), client.getlName(),
-            client.getGender(), client.getDob().getMonth() + ""};
+        return scores;
+    }
 
-        //number of matches for individual fields
-        int fieldMatchCount = countOfEqual(newClientInfo, clientInfo);
+    /**
+     * Scores the clients in [from, to), splitting the range until it is no
+     * larger than a batch
+     */
+    private static class ScoreTask extends RecursiveAction {
 
-        if (fieldMatchCount < 2) {
-            matchFailed = true;
-        }
+        private static final long serialVersionUID = 1L;
 
-        //
-        //
-        // TWIN CHECK for isMatch1
-        //
-        //
-        if (isTwin1(newClient, client)) {
-            twinCheckOne++; //02/26/18 by TL
-            matchFailed = true;
-        }
+        private final int[][] scores;
+        private final int from, to;
 
-        
-        //moved from the top of the method to the bottom 02/26/18 by TL
-        // Stay conflict filter
-        //
-        // If two clients have a conflict in stay times at different projects,
-        // then they cannot be duplicates
-        //
-        //        System.out.println("personal ID: " + newClient.getPersonalId());
-        if (hasStayConflict(
-                ENTRY_DATES.get(newClient.getPersonalId()),
-                EXIT_DATES.get(newClient.getPersonalId()),
-                ENTRY_DATES.get(client.getPersonalId()),
-                EXIT_DATES.get(client.getPersonalId())
-        )) {
-            stayConflictClientsOne.add(client.getPersonalId() + "_" + newClient.getPersonalId());
-            stayConflictCountOne++;
-            matchFailed = true;
+        ScoreTask(int[][] scores, int from, int to) {
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
         }
 
-        
-        
-        String newHouseholdId = HOUSEHOLD_IDS.get(newClient.getPersonalId());
-        String houseHoldId = HOUSEHOLD_IDS.get(client.getPersonalId());
-
-        //if both entries have non-empty equal HHIDS, then they are not
-        //the same client
-        if (!newHouseholdId.equals("\"\"") && newHouseholdId.equals(houseHoldId)) {
-            //System.out.println("same household ID: \n" + newClient.toString()
-            //        + "\n" + client.toString());
-            houseHoldIDConflictClientsOne.add(client.getPersonalId() + "_" + newClient.getPersonalId());
-            sameHouseHoldOne++;
-            matchFailed = true;
-        }
-/*
-         */
-        return !matchFailed;
-
-    }//END isMatch1
-
-    static boolean isMatch2(Client newClient, Client client) {
+        @Override
+        protected void compute() {
+            if (to - from > SCORE_BATCH_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScoreTask(scores, from, mid), new ScoreTask(scores, mid, to));
+                return;
+            }
 
-        // KG 2018-03-11
-        // Assume that the client is a match, until it is rejected by a filter
-        boolean matchFailed = false;
+            ClientPair pair = new ClientPair(clients);
 
-        //
-        //
-        // First set of criteria (look for matching)
-        //
-        //
-        String fName = newClient.getfName();
-        String lName = newClient.getlName();
-        String dobS = newClient.getDobS();
-        String ssn = newClient.getSsn();
-        String personalId = newClient.getPersonalId();
-        String ssnDataQuality = newClient.getSsnDataQuality();
-
-        
-        String[] client1Info = {fName, lName, dobS,};
-        String[] client2Info = {client.getfName(), client.getlName(), client.getDobS()};
+            for (int i = from; i < to; i++) {
+                int[] candidates = blockingIndex.candidates(i, i);
 
+                int count = 0;
+                for (int candidate : candidates) {
+                    pair.set(i, candidate);
+                    int result = 0;
+                    if (TEST1.matches(pair)) {
+                        result |= MATCH1;
+                    }
+                    if (TEST2.matches(pair)) {
+                        result |= MATCH2;
+                    }
+                    if (result != 0) {
+                        candidates[count++] = candidate << 2 | result;
+                    }
+                }
 
-        //ssn equality test
-        //stepA is true if ssns are complete and matching
-        boolean stepA = false;
-        if (hasSsnMatch(ssn, client)) {
+                scores[i] = Arrays.copyOf(candidates, count);
+            }
+        }
+    }
 
-            String clientSsnDataQuality = client.getSsnDataQuality();
+    /**
+     * Phase two of parallel matching: builds the duplicate groups from the
+     * scored pairs on one thread
+     *
+     * Clients and their matches are visited in the order the sequential
+     * matcher would visit them, so the groups do not depend on the number of
+     * threads.
+     *
+     * @return the number of clients that matched no earlier client
+     */
+    private static long buildGroups(int[][] scores) {
+        long unique = 0;
 
-            //if both ssns are complete
-            if (isFullSsn(ssnDataQuality) && isFullSsn(clientSsnDataQuality)) {
-                stepA = true;
+        for (int i = 0; i < scores.length; i++) {
+            for (int score : scores[i]) {
+                //passing either test makes the clients duplicates
+                clusters.union(i, score >>> 2);
             }
 
+            if (scores[i].length == 0) {
+                unique++;
+            }
         }
 
-        // How equal are they? Has potential if at least two fields match
-        boolean stepB = countOfEqual(client1Info, client2Info) >= 2;
+        return unique;
+    }
 
-        //if first set fails to find a match
-        if (!(stepA || stepB)) {
-            matchFailed = true;
-        }
+    /**
+     * Reads Client.csv into batches, skipping clients with the special DoB
+     *
+     * Stays, households and first entries are added in the match stage, once
+     * Enrollment.csv has been read.
+     */
+    private static void parseClients(StagedPipeline.Output<ClientBatch> out)
+            throws IOException, InterruptedException {
 
-        //
-        //
-        // Second set of criteria (look for distinctions)
-        //
-        //
-        String gender = newClient.getGender();
-        String suffix = newClient.getSuffix();
-        LocalDate dob = newClient.getDob();
+        //reads the file, remembering where each record starts
+        HmisCsvReader sc = input.openReader("Client.csv");
 
-        //success for stepA AND stepB indicates a HARD MATCH
-        //only look for distinctions if we dont have a HARD MATCH
-        if (!(stepA && stepB)) {
+        System.out.println("READING FROM: " + new File(INPUT_PATH, "Client.csv") + " ...");
 
-            client1Info = new String[]{
-                gender,
-                suffix,
-                String.valueOf(dob.getDayOfMonth()),
-                String.valueOf(dob.getMonthValue()),
-                String.valueOf(dob.getYear())
-            };
+        // columns, found by name in the header
+        HmisSchema columns = new HmisSchema(sc, "Client.csv");
+        int personalIdColumn = columns.indexOf(HmisSchema.Column.PERSONAL_ID);
+        int fNameColumn = columns.indexOf(HmisSchema.Column.FIRST_NAME);
+        int lNameColumn = columns.indexOf(HmisSchema.Column.LAST_NAME);
+        int suffixColumn = columns.indexOf(HmisSchema.Column.NAME_SUFFIX);
+        int nameDataQualityColumn = columns.indexOf(HmisSchema.Column.NAME_DATA_QUALITY);
+        int ssnColumn = columns.indexOf(HmisSchema.Column.SSN);
+        int ssnDataQualityColumn = columns.indexOf(HmisSchema.Column.SSN_DATA_QUALITY);
+        int dobColumn = columns.indexOf(HmisSchema.Column.DOB);
+        int dobDataQualityColumn = columns.indexOf(HmisSchema.Column.DOB_DATA_QUALITY);
+        int raceNoneColumn = columns.indexOf(HmisSchema.Column.RACE_NONE);
+        sc.setLastField(columns.getLastIndex());
 
-            LocalDate client2Dob = client.getDob();
-            client2Info = new String[]{
-                client.getGender(),
-                client.getSuffix(),
-                String.valueOf(client2Dob.getDayOfMonth()),
-                String.valueOf(client2Dob.getMonthValue()),
-                String.valueOf(client2Dob.getYear())
-            };
+        //data quality codes, one String per distinct value
+        FieldPool codes = new FieldPool();
 
-            if (countOfInequal(client1Info, client2Info) >= 2) {
-                matchFailed = true;
-            }
+        HmisDateParser dates = new HmisDateParser();
 
-        }
+        ClientBatch batch = new ClientBatch(STAGE_BATCH_SIZE);
 
-        //
-        //
-        // Third set of criteria (TWIN CHECK)
-        //
-        //
-        if (isTwin2(client, newClient)) {
-            twinCheckTwo++; //02/26/18 by TL
-            matchFailed = true;
-        }
-        
-        //02/26/18 by TL
-        // Stay conflict filter
-        //
-        // If two clients have a conflict in stay times at different projects,
-        // then they cannot be duplicates
-        //
-//        System.out.println("personal ID: " + newClient.getPersonalId());
-        if (hasStayConflict(
-                ENTRY_DATES.get(newClient.getPersonalId()),
-                EXIT_DATES.get(newClient.getPersonalId()),
-                ENTRY_DATES.get(client.getPersonalId()),
-                EXIT_DATES.get(client.getPersonalId())
-        )) {
-            if (!stayConflictClientsOne.contains(client.getPersonalId() + "_" + newClient.getPersonalId())) {
-                stayConflictCountTwo++;
-            }
-            matchFailed = true;
-        }
-        
-        
-        
-        String newHouseholdId = HOUSEHOLD_IDS.get(newClient.getPersonalId());
-        String houseHoldId = HOUSEHOLD_IDS.get(client.getPersonalId());
+        //for each entry
+        while (sc.next()) {
 
-        //if both entries have non-empty equal HHIDS, then they are not
-        //the same client
-        if (!newHouseholdId.equals("\"\"") && newHouseholdId.equals(houseHoldId)) {
-            if (houseHoldIDConflictClientsOne.contains(client.getPersonalId() + "_" + newClient.getPersonalId())) {
-                sameHouseHoldTwo++;
+            if (!REJECTS.isComplete("Client.csv", sc, columns, personalIdColumn)) {
+                continue;
             }
-            matchFailed = true;
-        }
 
-         
-        return !matchFailed;
+            String dobS = sc.getString(dobColumn);
 
-    }//END isMatch2
+            //if a client has the special
+            if (!SPECIAL_DATE.equals(dobS)) {
 
-    /**
-     * Determines whether two clients are considered to be twins, based on match
-     * test 1
-     */
-    private static boolean isTwin1(Client newClient, Client client) {
+                String personalId = sc.getString(personalIdColumn);
 
-        String lName = newClient.getlName();
-        LocalDate dob = newClient.getDob();
-        String ssn = newClient.getSsn();
-        String personalId = newClient.getPersonalId();
-        String fName = newClient.getfName();
+                String fName = sc.getString(fNameColumn);
+                String lName = sc.getString(lNameColumn);
+                String suffix = sc.getString(suffixColumn);
+                String nameDataQuality = codes.get(sc, nameDataQualityColumn);
 
-        if (lName.equals(client.getlName()) && dob.equals(client.getDob())) {
-            // Matching SSNs
-            if (ssn.equals(client.getSsn())) {
-                //get the oldest entry
-                LocalDate entryDate = ENTRY_DATES.get(personalId).get(0);
-                // Age < 18
-                if (!dob.isBefore(entryDate.minusYears(18))) {
-                    String client2FName = client.getfName();
-                    // Different first names
-                    if (!fName.isEmpty() && !client2FName.isEmpty() && !fName.equals(client2FName)) {
-                        return true;
-                    }
+                String ssn = sc.getString(ssnColumn);
+                String ssnDataQuality = codes.get(sc, ssnDataQualityColumn);
+
+                int dob = dates.parse(sc, dobColumn);
+                if (dob == HmisDateParser.INVALID) {
+                    REJECTS.reject("Client.csv", sc.getRecordOffset(), RejectLog.Reason.BAD_DOB, sc.getRecord());
+                    continue;
                 }
-            }
-        }
 
-        return false;
-    }//end method
+                String dobDataQuality = codes.get(sc, dobDataQualityColumn);
 
-    /**
-     * Determines whether two clients are considered to be twins, based on match
-     * test 2
-     */
-    private static boolean isTwin2(Client newClient, Client client) {
+                String race = columns.getRace(sc);
 
-        String lName = newClient.getlName();
-        LocalDate dob = newClient.getDob();
-        String ssn = newClient.getSsn();
-        String personalId = newClient.getPersonalId();
-        String fName = newClient.getfName();
+                String raceDataQuality = codes.get(sc, raceNoneColumn);
 
-        if (lName.equals(client.getlName()) && dob.equals(client.getDob())) {
-            // Different SSNs
-            if (!ssn.equals(client.getSsn())) {
-                //get the oldest entry
-                LocalDate entryDate = ENTRY_DATES.get(personalId).get(0);
-                // Age < 18
-                if (!dob.isBefore(entryDate.minusYears(18))) {
-                    String client2FName = client.getfName();
-                    // Different first names
-                    if (!fName.isEmpty() && !client2FName.isEmpty() && !fName.equals(client2FName)) {
-                        return true;
-                    }
+                String gender = columns.getGender(sc);
+
+                batch.add(
+                        personalId, fName, lName, suffix, nameDataQuality,
+                        ssn, ssnDataQuality,
+                        dob, dobDataQuality, gender, race, raceDataQuality
+                );
+                if (batch.isFull()) {
+                    out.put(batch);
+                    batch = new ClientBatch(STAGE_BATCH_SIZE);
                 }
-            }
-        }
 
-        return false;
-    }//end method
+            }//end special date condition
 
-    /**
-     * If SSNs are equal and SSN is not garbage based on spec
-     */
-    private static boolean hasSsnMatch(String ssn, Client client) {
-        return client.getSsn().equals(ssn) //codes are equal
-                && "1".equals(client.getSsnDataQuality()) //ssns are full //02/26/18 modified by TL by relacing "ssn" with current method
-                && !"999999999".equals(ssn) //ssns are valid numbers
-                && !"000000000".equals(ssn);
+        }//END WHILE
+
+        if (batch.size() > 0) {
+            out.put(batch);
+        }
+
+        sc.close();
     }
 
     /**
-     * If SsnDataQuality is good based on algorithm
+     * Adds a batch of clients to the table, with their stays, households and
+     * first entries, and matches them
+     *
+     * @param stays done once Enrollment.csv and Exit.csv have been read
      */
-    private static boolean isFullSsn(String ssnDataQuality) {
-        return "1".equals(ssnDataQuality);
+    private static void matchBatch(ClientBatch batch, CompletableFuture<Void> stays) {
+        stays.join();
+        for (int i = 0; i < batch.size(); i++) {
+            int row = clients.add(batch, i);
+            long clientKey = personalKey(clients.getPersonalId(row));
+            int enrolled = ENROLLED_CLIENTS.get(clientKey, -1);
+            clients.setStays(row, STAYS.get(enrolled));
+            clients.setHouseholds(row, HOUSEHOLDS.get(enrolled));
+            clients.setFirstEntry(row, FIRST_ENTRIES.get(clientKey, TwinIndex.NO_ENTRY));
+            matchClient(row, batch.blockKeys, BlockingIndex.KEYS * i);
+        }
     }
 
     /**
-     * Count how many times items in array are equal client1Info[i] ==
-     * client2Info[i]
+     * Reads Client.csv, Enrollment.csv and Exit.csv, and adds and matches
+     * each client with its stays, households and first entry
      */
-    private static int countOfEqual(String[] client1Info, String[] client2Info) {
-        int count = 0;
-        for (int i = 0; i < client1Info.length; i++) {
-            if (client1Info[i].equals(client2Info[i]) && !client1Info[i].isEmpty()) {
-                count++;
-            }
+    private static void loadInputs() throws IOException {
+
+        //Exit.csv and Enrollment.csv are read on their own threads; the stays
+        //join exits to enrollments once both are read
+        ExecutorService loaders = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Integer> exits = load(Algorithm1::readExits, loaders);
+            CompletableFuture<PendingStays> enrollments = load(Algorithm1::readEnrollments, loaders);
+            int exportEnd = readExportEnd();
+            CompletableFuture<Void> stays = enrollments.thenAcceptBoth(exits,
+                    (pending, latestExit) -> joinStays(pending, exportEnd, latestExit));
+
+            //meanwhile Client.csv goes through the stages; the match stage
+            //waits for the stays before its first batch
+            StagedPipeline pipeline = new StagedPipeline("clients");
+            pipeline.source("parse", Algorithm1::parseClients)
+                    .then("normalize", NORMALIZE_THREADS, NORMALIZE_QUEUE, batch -> {
+                        batch.normalize();
+                        clients.encode(batch);
+                        BlockingIndex.keys(batch);
+                        return batch;
+                    })
+                    .into("match", MATCH_QUEUE, batch -> matchBatch(batch, stays));
+            pipeline.run();
+
+            stays.join();
+            pipeline.printThroughput();
+        } catch (CompletionException e) {
+            throw rethrow(e);
+        } finally {
+            loaders.shutdown();
         }
 
-        return count;
+        REJECTS.printCounts();
+        REJECTS.close();
     }
 
     /**
-     * Count how many times items in array are not equal client1Info[i] ==
-     * client2Info[i]
-     *
-     * If one field is blank, then there are no conflicts
+     * @return the epoch day of the ExportEndDate of Export.csv, or
+     * HmisDateParser.INVALID if the export has none
      */
-    private static int countOfInequal(String[] client1Info, String[] client2Info) {
-        int count = 0;
-        for (int i = 0; i < client1Info.length; i++) {
-            if (!client1Info[i].equals(client2Info[i])
-                    && !client1Info[i].isEmpty()
-                    && !client2Info[i].isEmpty()) {
-                count++;
+    private static int readExportEnd() throws IOException {
+        if (input.getCsvNames().contains("Export.csv")) {
+            HmisCsvReader sc = input.openReader("Export.csv");
+            HmisSchema columns = new HmisSchema(sc, "Export.csv");
+            int exportEndColumn = columns.indexOf(HmisSchema.Column.EXPORT_END_DATE);
+            int exportEnd = sc.next() ? new HmisDateParser().parse(sc, exportEndColumn) : HmisDateParser.INVALID;
+            sc.close();
+            if (exportEnd != HmisDateParser.INVALID) {
+                System.out.println("Export end date = " + LocalDate.ofEpochDay(exportEnd) + ", from Export.csv");
+                return exportEnd;
             }
         }
-
-        return count;
+        return HmisDateParser.INVALID;
     }
 
     /**
-     * Get entry dates for everyone mapping PID to the date of entry
+     * Reads the exit dates of Exit.csv into EXIT_DATES, by enrollment
      *
-     * Gets household ids
+     * @return the epoch day of the latest reliable exit date, or
+     * HmisDateParser.INVALID if there is none
      */
-    private static void getEnrollmentData() {
+    private static Integer readExits() throws IOException {
 
         //
         // Read exit dates from
@@ -824,120 +830,285 @@ public class Algorithm1 {
         // 
         // Validate the exit data
         //
-        Scanner sc = null;
-        try {
-            sc = new Scanner(new File(INPUT_PATH + "Exit.csv"), "UTF-8");
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(Algorithm1.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        sc = sc.useDelimiter("[,\n]");
-        sc.nextLine();
+        HmisCsvReader sc = input.openReader("Exit.csv");
+        HmisDateParser dates = new HmisDateParser();
+
+        HmisSchema columns = new HmisSchema(sc, "Exit.csv");
+        int enrollmentIdColumn = columns.indexOf(HmisSchema.Column.ENROLLMENT_ID);
+        int personalIdColumn = columns.indexOf(HmisSchema.Column.PERSONAL_ID);
+        int exitDateColumn = columns.indexOf(HmisSchema.Column.EXIT_DATE);
+        int destinationColumn = columns.indexOf(HmisSchema.Column.DESTINATION);
+        sc.setLastField(columns.getLastIndex());
 
-        while (sc.hasNextLine()) {
+        //UNRELIABLE_EXIT is Integer.MIN_VALUE, so it is never the latest
+        int latestExit = HmisDateParser.INVALID;
 
-            String line = sc.nextLine();
-            String[] array = line.split(",");
+        while (sc.next()) {
+
+            if (!REJECTS.isComplete("Exit.csv", sc, columns, personalIdColumn)) {
+                continue;
+            }
 
-            if (array.length == 0) {
-                break;
+            if (sc.isEmpty(enrollmentIdColumn)) {
+                continue;       //joins to no enrollment
             }
 
-            String exitId = array[0];
-            String personalId = array[2];
-            String exitDateS = array[3].trim();
-            String destination = array[4].trim();
-            LocalDate exitDate = null;
+            String destination = sc.getString(destinationColumn).trim();
+            int exitDate;
             //02/27/18 added by TL
             if (destination.equals("30")) {
 //                System.out.println("find a wrong exit date: " + exitDateS);
-                exitDate = LocalDate.of(0000, 01, 01);
+                exitDate = UNRELIABLE_EXIT;
             } else {
-                try {
-                    exitDate = LocalDate.parse(exitDateS, DATE_FORMAT);
-                } catch (DateTimeParseException e) {
-                    exitDate = LocalDate.parse(exitDateS, NEW_DATE_FORMAT);
+                exitDate = dates.parse(sc, exitDateColumn);
+                if (exitDate == HmisDateParser.INVALID) {
+                    REJECTS.reject("Exit.csv", sc.getRecordOffset(), RejectLog.Reason.BAD_EXIT_DATE, sc.getRecord());
+                    continue;
                 }
             }
             //done adding
 
-            /* Map exit id to exit date to be referenced by enrollment entries */
-            EXIT_IDS.put(exitId, exitDate);
+            /* Map enrollment id to exit date to be referenced by enrollment entries */
+            EXIT_DATES.put(enrollmentKey(sc, enrollmentIdColumn), exitDate);
+            latestExit = Math.max(latestExit, exitDate);
 
         }
 
+        sc.close();
+
+        return latestExit;
+    }
+
+    /**
+     * Get entry dates for everyone mapping PID to the date of entry
+     *
+     * Gets household ids
+     *
+     * @return the enrollments, for joining to their exits
+     */
+    private static PendingStays readEnrollments() throws IOException {
+
         //
         // Read enrollment dates and household ids from
         // Enrollment.csv
         //
-        sc = null;
-        try {
-            sc = new Scanner(new File(INPUT_PATH + "Enrollment.csv"), "UTF-8");
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(Algorithm1.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        sc = sc.useDelimiter("[,\n]");
-        sc.nextLine();
+        HmisCsvReader sc = input.openReader("Enrollment.csv");
+        HmisDateParser dates = new HmisDateParser();
 
-        int count = 0;
+        HmisSchema columns = new HmisSchema(sc, "Enrollment.csv");
+        int enrollmentIdColumn = columns.indexOf(HmisSchema.Column.ENROLLMENT_ID);
+        int personalIdColumn = columns.indexOf(HmisSchema.Column.PERSONAL_ID);
+        int entryDateColumn = columns.indexOf(HmisSchema.Column.ENTRY_DATE);
+        int householdIdColumn = columns.indexOf(HmisSchema.Column.HOUSEHOLD_ID);
+        sc.setLastField(columns.getLastIndex());
 
-        while (sc.hasNextLine()) {
+        PendingStays pending = new PendingStays();
 
-            String line = sc.nextLine();
-            String[] array = line.split(",");
+        while (sc.next()) {
 
-            if (array.length == 0) {
-                break;
+            if (!REJECTS.isComplete("Enrollment.csv", sc, columns, personalIdColumn)) {
+                continue;
             }
 
-            String entryId = array[0];
-            String personalId = array[1].trim();
-            String entryDateS = array[3].trim();
-            String houseHoldId = array[4];
+            long entryKey = enrollmentKey(sc, enrollmentIdColumn);
+            String houseHoldId = sc.getString(householdIdColumn);
 
-            LocalDate entryDate = null;
-            try {
-                entryDate = LocalDate.parse(entryDateS, DATE_FORMAT);
-            } catch (DateTimeParseException e) {
-                entryDate = LocalDate.parse(entryDateS, NEW_DATE_FORMAT);
+            int entryDate = dates.parse(sc, entryDateColumn);
+            if (entryDate == HmisDateParser.INVALID) {
+                REJECTS.reject("Enrollment.csv", sc.getRecordOffset(), RejectLog.Reason.BAD_ENTRY_DATE, sc.getRecord());
+                continue;
             }
 
-            ArrayList<LocalDate> eds = ENTRY_DATES.get(personalId);
-            if (eds == null) {
-                eds = new ArrayList<>();
-                ENTRY_DATES.put(personalId, eds);
+            long clientKey = personalKey(sc, personalIdColumn);
+            int client = ENROLLED_CLIENTS.get(clientKey, -1);
+            if (client < 0) {
+                //the first enrollment of the client
+                client = ENROLLED_CLIENTS.size();
+                ENROLLED_CLIENTS.put(clientKey, client);
+                FIRST_ENTRIES.put(clientKey, entryDate);
             }
-            eds.add(entryDate);
 
-            /* Associate entry date with corresponding exit date, if an exit date exists */
-            LocalDate exitDate = EXIT_IDS.get(entryId);
-            if (exitDate != null) {
-
-                /* Map personal id to exit date with matching entry/exit id */
-                ArrayList<LocalDate> clientExitDates = EXIT_DATES.get(personalId);
-                if (clientExitDates == null) {
-                    clientExitDates = new ArrayList<>();
-                    EXIT_DATES.put(personalId, clientExitDates);
-                }
-                clientExitDates.add(entryDate);
+            //the stay is added once the exits have been read
+            pending.add(client, entryKey, entryDate);
 
-            } else {
+            HOUSEHOLDS.add(client, houseHoldId);
 
-                /* Map personal id to exit date that equals entry date */
-                ArrayList<LocalDate> clientExitDates = EXIT_DATES.get(personalId);
-                if (clientExitDates == null) {
-                    clientExitDates = new ArrayList<>();
-                    EXIT_DATES.put(personalId, clientExitDates);
-                }
-                clientExitDates.add(entryDate);
+        }
+
+        sc.close();
+
+        HOUSEHOLDS.seal();
 
+        return pending;
+    }
+
+    /**
+     * Adds the stay of every enrollment, now that the exits are known
+     *
+     * A stay runs from the entry date up to the exit date of the same
+     * enrollment. An enrollment with no exit was still open when the export
+     * was made, so its stay runs through the export end date; one whose exit
+     * date is unreliable adds no stay. An export with no ExportEndDate ends at
+     * its latest entry or exit date, rather than at the day it is run, so a
+     * run gives the same stays whenever it is made.
+     *
+     * @param exportEnd the epoch day of the export end date, or
+     * HmisDateParser.INVALID if the export has none
+     * @param latestExit the epoch day of the latest reliable exit date
+     */
+    private static void joinStays(PendingStays pending, int exportEnd, int latestExit) {
+        if (exportEnd == HmisDateParser.INVALID) {
+            exportEnd = latestExit;
+            for (int i = 0; i < pending.size; i++) {
+                exportEnd = Math.max(exportEnd, pending.entryDates[i]);
+            }
+            if (exportEnd != HmisDateParser.INVALID) {
+                System.out.println("Export end date = " + LocalDate.ofEpochDay(exportEnd)
+                        + ", the latest entry or exit date, as Export.csv has none");
+            }
+        }
+
+        for (int i = 0; i < pending.size; i++) {
+            /* Associate entry date with corresponding exit date, if an exit date exists */
+            int exitDate = EXIT_DATES.get(pending.enrollmentKeys[i], OPEN_STAY);
+            if (exitDate == UNRELIABLE_EXIT) {
+                continue;
+            }
+            if (exitDate == OPEN_STAY) {
+                exitDate = exportEnd + 1;
             }
+            STAYS.add(pending.clients[i], pending.entryDates[i], exitDate);
+        }
 
-            HOUSEHOLD_IDS.put(personalId, houseHoldId);
+        /* Sort and merge each client's stays once, rather than for every pair */
+        STAYS.seal();
+    }
 
+    /**
+     * @return an enrollment id as a number: its digits and length if it is
+     * all digits, otherwise the negative of its code in ENROLLMENT_IDS
+     */
+    private static long enrollmentKey(HmisCsvReader sc, int column) {
+        int length = sc.getFieldLength(column);
+        boolean numeric = length > 0 && length <= 17;
+        long key = 0;
+        for (int i = 0; numeric && i < length; i++) {
+            byte b = sc.byteAt(column, i);
+            numeric = b >= '0' && b <= '9';
+            key = 10 * key + (b - '0');
+        }
+        if (numeric) {
+            //"123" and "0123" are different ids
+            return 20 * key + length;
         }
+        //Exit.csv and Enrollment.csv are read at the same time
+        synchronized (ENROLLMENT_IDS) {
+            return -1 - ENROLLMENT_IDS.encode(sc.getString(column));
+        }
+    }
 
-        sc.close();
+    /**
+     * @return the trimmed PersonalID of an enrollment as a number, as
+     * enrollmentKey does: its digits and length if it is all digits,
+     * otherwise the negative of its code in PERSONAL_IDS
+     */
+    private static long personalKey(HmisCsvReader sc, int column) {
+        int start = 0, end = sc.getFieldLength(column);
+        while (start < end && sc.byteAt(column, start) >= 0 && sc.byteAt(column, start) <= ' ') {
+            start++;
+        }
+        while (end > start && sc.byteAt(column, end - 1) >= 0 && sc.byteAt(column, end - 1) <= ' ') {
+            end--;
+        }
+        int length = end - start;
+        boolean numeric = length > 0 && length <= 17;
+        long key = 0;
+        for (int i = start; numeric && i < end; i++) {
+            byte b = sc.byteAt(column, i);
+            numeric = b >= '0' && b <= '9';
+            key = 10 * key + (b - '0');
+        }
+        if (numeric) {
+            return 20 * key + length;
+        }
+        return -1 - PERSONAL_IDS.encode(sc.getString(column).trim());
+    }
+
+    /**
+     * @return the personalKey of the PersonalID of a client, once every
+     * enrollment has been read; 0, which is no key, if no enrollment has a
+     * text id equal to it
+     */
+    private static long personalKey(String personalId) {
+        int length = personalId.length();
+        boolean numeric = length > 0 && length <= 17;
+        long key = 0;
+        for (int i = 0; numeric && i < length; i++) {
+            char c = personalId.charAt(i);
+            numeric = c >= '0' && c <= '9';
+            key = 10 * key + (c - '0');
+        }
+        if (numeric) {
+            return 20 * key + length;
+        }
+        return -1 - PERSONAL_IDS.codeOf(personalId);
+    }
 
+    /**
+     * Throws the cause of a failed future as it was thrown
+     *
+     * @return never; for throw rethrow(e)
+     */
+    private static RuntimeException rethrow(CompletionException e) throws IOException {
+        if (e.getCause() instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) e.getCause()).getCause();
+        }
+        if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+        }
+        throw e;
+    }
+
+    /**
+     * Runs a loader on an executor, rethrowing its IOException unchecked
+     */
+    private static <T> CompletableFuture<T> load(Loader<T> loader, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader.load();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private interface Loader<T> {
+
+        T load() throws IOException;
+    }
+
+    /**
+     * Enrollments read before their exits, as the index of the client in
+     * STAYS, enrollment id and entry epoch day
+     */
+    private static class PendingStays {
+
+        private int[] clients = new int[1024];
+        private long[] enrollmentKeys = new long[1024];
+        private int[] entryDates = new int[1024];
+        private int size = 0;
+
+        private void add(int client, long enrollmentKey, int entryDate) {
+            if (size == entryDates.length) {
+                clients = Arrays.copyOf(clients, 2 * size);
+                enrollmentKeys = Arrays.copyOf(enrollmentKeys, 2 * size);
+                entryDates = Arrays.copyOf(entryDates, 2 * size);
+            }
+            clients[size] = client;
+            enrollmentKeys[size] = enrollmentKey;
+            entryDates[size] = entryDate;
+            size++;
+        }
     }
 
     /**
@@ -951,11 +1122,36 @@ public class Algorithm1 {
         }
     }
 
-    private static void changePersonalIds(String filename)
-            throws FileNotFoundException, UnsupportedEncodingException {
+    /**
+     * Writes Crosswalk.bin and Crosswalk.csv, the new personal id of every
+     * client that was matched, by its old personal id
+     *
+     * @return the CRC32 of Crosswalk.bin
+     */
+    private static long writeCrosswalk() throws IOException {
+        String[] oldIds = new String[ordinals.size()];
+        String[] newIds = new String[ordinals.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : ordinals.entrySet()) {
+            oldIds[i] = entry.getKey();
+            newIds[i] = canonicalIds[clusters.find(entry.getValue())];
+            i++;
+        }
 
-        String noExtensionFileName = filename.substring(0, filename.indexOf(".csv"));
-        String outputFilename = OUTPUT_PATH + noExtensionFileName + "Output.csv";
+        new File(OUTPUT_PATH).mkdirs();
+        System.out.print("Writing to " + OUTPUT_PATH + "Crosswalk.bin ... ");
+        long crc = IdCrosswalk.write(new File(OUTPUT_PATH + "Crosswalk.bin"),
+                new File(OUTPUT_PATH + "Crosswalk.csv"), oldIds, newIds);
+        System.out.println("DONE");
+        return crc;
+    }
+
+    /**
+     * Writes every CSV of the input with the new personal ids, as files or
+     * as entries of one zip, skipping the outputs that the manifest lists as
+     * complete and recording each other once it is
+     */
+    private static void writeOutput(OutputManifest manifest) throws IOException {
 
         /* Add output directory if it does not exist */
         File outputDir = new File(OUTPUT_PATH);
@@ -963,56 +1159,345 @@ public class Algorithm1 {
             outputDir.mkdir();
         }
 
-        /* Output results */
-        try (PrintWriter pw = new PrintWriter(outputFilename, "UTF-8")) {
+        File zipFile = new File(OUTPUT_PATH + "Output.zip");
+        if (ZIP_OUTPUT && manifest.isComplete(zipFile)) {
+            System.out.println("Writing to " + zipFile.getPath() + " ... ALREADY COMPLETE");
+            return;
+        }
+
+        //every file is rewritten at once, a large one in ranges
+        long start = System.nanoTime();
+        IdPrefixes prefixes = new IdPrefixes();
+        ExecutorService writers = Executors.newFixedThreadPool(REWRITE_THREADS);
+        CsvRewriter rewriter = new CsvRewriter(writers, REWRITE_RANGE_SIZE);
+        LinkedHashMap<File, CompletableFuture<Long>> outputs = new LinkedHashMap<>();
+        int complete = 0;
+        try {
+            for (String filename : input.getCsvNames()) {
+                String noExtension = filename.substring(0, filename.indexOf(".csv"));
+                // A CSV provided by HUD
+
+                if (!noExtension.endsWith("Output")) {
+                    File output = new File(OUTPUT_PATH + noExtension + "Output.csv");
+                    if (manifest.isComplete(output)) {
+                        outputs.put(output, null);
+                    } else {
+                        outputs.put(output, rewriter.rewrite(input, filename, output, new ChangePersonalIds(prefixes)));
+                    }
+                }
+            }//end file loop
 
-            Scanner sc = new Scanner(new File(INPUT_PATH + filename), "UTF-8");
-            sc = sc.useDelimiter("[,\n]");
+            for (Map.Entry<File, CompletableFuture<Long>> output : outputs.entrySet()) {
+                File file = output.getKey();
+                if (output.getValue() == null) {
+                    System.out.println("Writing to " + file.getPath() + " ... ALREADY COMPLETE");
+                    complete++;
+                } else {
+                    manifest.complete(file, output.getValue().join());
+                    System.out.println("Writing to " + file.getPath() + " ... DONE");
+                }
+            }
+        } catch (CompletionException e) {
+            throw rethrow(e);
+        } finally {
+            writers.shutdown();
+        }
 
-            String headers = sc.nextLine();
-            String[] headersArray = headers.split(",");
+        System.out.println(String.format("Rewrote %d files on %d threads in %.2f s",
+                outputs.size() - complete, REWRITE_THREADS, (System.nanoTime() - start) / 1e9));
 
-            int personalIdCol = -1;
-            for (int i = 0; i < headersArray.length; i++) {
-                // Is there even a PersonalID column (lowercase because it's spelled differently)
-                if ("personalid".equals(headersArray[i].toLowerCase())) {
-                    personalIdCol = i;
+        if (ZIP_OUTPUT) {
+            writeZip(zipFile, outputs.keySet(), manifest);
+        }
+    }
+
+    /**
+     * Moves the output files into one zip
+     */
+    private static void writeZip(File zipFile, Collection<File> files, OutputManifest manifest) throws IOException {
+        File temp = new File(zipFile.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (ZipOutputStream zip = new ZipOutputStream(
+                new BufferedOutputStream(new CheckedOutputStream(new FileOutputStream(temp), crc)))) {
+            for (File file : files) {
+                System.out.print("Writing to " + zipFile.getPath() + ":" + file.getName() + " ... ");
+                zip.putNextEntry(new ZipEntry(file.getName()));
+                Files.copy(file.toPath(), zip);
+                zip.closeEntry();
+                System.out.println("DONE");
+            }
+        }
+        CsvRewriter.replace(temp, zipFile);
+        manifest.complete(zipFile, crc.getValue());
+
+        //the files are in the zip now
+        for (File file : files) {
+            manifest.remove(file);
+            Files.delete(file.toPath());
+        }
+    }
+
+    /**
+     * The new personal id of every client, with the comma after it, as the
+     * bytes that are put before each line of the output
+     *
+     * An id is found by its bytes, as a number if it is all digits and
+     * otherwise by a hash of its bytes, so the prefix of a client's line is
+     * found without making a String.
+     */
+    private static class IdPrefixes {
+
+        /**
+         * the ordinal of a hash that more than one personal id has
+         */
+        private static final int COLLIDED = -2;
+
+        /**
+         * maps the idKey of each all-digit personal id to its ordinal
+         */
+        private final LongIntMap numericIds = new LongIntMap(ordinals.size());
+
+        /**
+         * maps the textHash of each other personal id to its ordinal, or to
+         * COLLIDED
+         */
+        private final LongIntMap textIds = new LongIntMap(ordinals.size());
+
+        /**
+         * the bytes of each personal id that is not all digits, to check a
+         * match of its hash
+         */
+        private final byte[][] textBytes = new byte[canonicalIds.length][];
+
+        /**
+         * the prefix of each ordinal, shared by its duplicate group
+         */
+        private final byte[][] prefixes = new byte[canonicalIds.length][];
+
+        private IdPrefixes() {
+            byte[][] groupPrefixes = new byte[canonicalIds.length][];
+            for (Map.Entry<String, Integer> entry : ordinals.entrySet()) {
+                int ordinal = entry.getValue();
+                byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                long key = idKey(id, 0, id.length);
+                if (key != NOT_AN_ID_KEY) {
+                    numericIds.put(key, ordinal);
+                } else {
+                    long hash = textHash(id, 0, id.length);
+                    textIds.put(hash, textIds.containsKey(hash) ? COLLIDED : ordinal);
+                    textBytes[ordinal] = id;
+                }
+
+                int root = clusters.find(ordinal);
+                if (groupPrefixes[root] == null) {
+                    groupPrefixes[root] = (CsvRewriter.toField(canonicalIds[root]) + ",")
+                            .getBytes(StandardCharsets.UTF_8);
+                }
+                prefixes[ordinal] = groupPrefixes[root];
+            }
+        }
+
+        /**
+         * @return the bytes to put before a line whose PersonalID field is
+         * from start up to end; a field in quotes is read as HmisCsvReader
+         * reads it, up to the closing quote with doubled quotes made single
+         */
+        private byte[] getField(byte[] bytes, int start, int end) {
+            if (start == end || bytes[start] != '"') {
+                return get(bytes, start, end);
+            }
+
+            int valueEnd = start + 1;
+            boolean escapes = false;
+            while (valueEnd < end) {
+                if (bytes[valueEnd] == '"') {
+                    if (valueEnd + 1 < end && bytes[valueEnd + 1] == '"') {
+                        escapes = true;
+                        valueEnd += 2;
+                        continue;
+                    }
                     break;
                 }
+                valueEnd++;
+            }
+            if (!escapes) {
+                return get(bytes, start + 1, valueEnd);
             }
 
-            pw.print("NewPersonalId,");
-            pw.println(headers);
+            byte[] value = new byte[valueEnd - start - 1];
+            int length = 0;
+            for (int i = start + 1; i < valueEnd; i++) {
+                value[length++] = bytes[i];
+                if (bytes[i] == '"') {
+                    i++;        //skip the second quote of the pair
+                }
+            }
+            return get(value, 0, length);
+        }
 
-            int scanCount = 0;
+        /**
+         * @return the bytes to put before a line with the given personal id
+         */
+        private byte[] get(byte[] bytes, int start, int end) {
+            long key = idKey(bytes, start, end);
+            if (key != NOT_AN_ID_KEY) {
+                int ordinal = numericIds.get(key, -1);
+                if (ordinal >= 0) {
+                    return prefixes[ordinal];
+                }
+                //not a client, so it keeps its id
+                byte[] prefix = Arrays.copyOfRange(bytes, start, end + 1);
+                prefix[end - start] = ',';
+                return prefix;
+            }
 
-            while (sc.hasNextLine()) {
+            int ordinal = textIds.get(textHash(bytes, start, end), -1);
+            if (ordinal >= 0 && equalBytes(textBytes[ordinal], bytes, start, end)) {
+                return prefixes[ordinal];
+            }
 
-                String line = sc.nextLine();
+            //not a client, or an id whose hash another id has, both rare
+            String personalId = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            return (CsvRewriter.toField(getCanonicalId(personalId)) + ",").getBytes(StandardCharsets.UTF_8);
+        }
 
-                String[] array = line.split(",");
-                try {
+        /**
+         * @return the 64-bit FNV-1a hash of an id, as a key LongIntMap can hold
+         */
+        private static long textHash(byte[] bytes, int start, int end) {
+            long hash = 0xCBF29CE484222325L;
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001B3L;
+            }
+            return hash == Long.MIN_VALUE ? 0 : hash;
+        }
 
-                    // Get the Client's personalId
-                    String personalId = array[personalIdCol];
+        private static boolean equalBytes(byte[] id, byte[] bytes, int start, int end) {
+            if (id.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < id.length; i++) {
+                if (id[i] != bytes[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 
-                    // Change it to the right PersonalId if it is a match
-                    if (matchingClients.containsKey(personalId)) {
-                        personalId = matchingClients.get(personalId);
-                    }
+    /**
+     * the idKey of an id that is not all digits
+     */
+    private static final long NOT_AN_ID_KEY = -1;
 
-                    pw.print(personalId + ",");
+    /**
+     * @return an all-digit id as its digits and length, or NOT_AN_ID_KEY
+     */
+    private static long idKey(byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (length == 0 || length > 17) {
+            return NOT_AN_ID_KEY;
+        }
+        long key = 0;
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b < '0' || b > '9') {
+                return NOT_AN_ID_KEY;
+            }
+            key = 10 * key + (b - '0');
+        }
+        //"123" and "0123" are different ids
+        return 20 * key + length;
+    }
+
+    /**
+     * Rewrites a CSV of the input with the new personal id of each line
+     * before it, finding the PersonalID field among the bytes of the line
+     */
+    private static class ChangePersonalIds implements CsvRewriter.Rewrite {
+
+        private final IdPrefixes prefixes;
 
-                } catch (ArrayIndexOutOfBoundsException e) {
+        private int personalIdCol = -1;
+
+        private ChangePersonalIds(IdPrefixes prefixes) {
+            this.prefixes = prefixes;
+        }
+
+        @Override
+        public byte[] header(String headers) {
+            byte[] bytes = headers.getBytes(StandardCharsets.UTF_8);
+            int field = 0;
+            for (int i = 0; field <= bytes.length; i++) {
+                int fieldEnd = skipField(bytes, field, bytes.length);
+                String header = new String(bytes, field, fieldEnd - field, StandardCharsets.UTF_8);
+                // Is there even a PersonalID column (lowercase because it's spelled differently)
+                if ("personalid".equals(CsvRewriter.fromField(header).trim().toLowerCase(Locale.ROOT))) {
+                    personalIdCol = i;
+                    break;
                 }
+                field = fieldEnd + 1;
+            }
+            return "NewPersonalId,".getBytes(StandardCharsets.UTF_8);
+        }
 
-                pw.println(line);
+        @Override
+        public byte[] line(byte[] bytes, int start, int end) {
+            if (personalIdCol < 0) {
+                return null;
+            }
 
-                //scanCount++;
+            // Get the Client's personalId
+            int field = start;
+            for (int col = 0; col < personalIdCol; col++) {
+                field = skipField(bytes, field, end);
+                if (field == end) {
+                    return null;        //too short to have one: copied as it is
+                }
+                field++;
+            }
+            int fieldEnd = skipField(bytes, field, end);
+
+            //as with String.split, a row whose fields from the PersonalID on
+            //are all empty is too short to have one
+            if (fieldEnd == field) {
+                int i = field;
+                while (i < end && bytes[i] == ',') {
+                    i++;
+                }
+                if (i == end) {
+                    return null;
+                }
             }
 
-        }//end try
+            return prefixes.getField(bytes, field, fieldEnd);
+        }
 
-    }//end changePersonalIds
+        /**
+         * @return the position of the comma after the field at a position, or
+         * end if it is the last field; as in HmisCsvReader, a field in quotes
+         * runs to its closing quote, past commas and doubled quotes, and
+         * anything after that quote up to the comma is skipped
+         */
+        private static int skipField(byte[] bytes, int position, int end) {
+            if (position < end && bytes[position] == '"') {
+                position++;
+                while (position < end) {
+                    if (bytes[position] == '"') {
+                        if (position + 1 < end && bytes[position + 1] == '"') {
+                            position += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+            }
+            while (position < end && bytes[position] != ',') {
+                position++;
+            }
+            return position;
+        }
+    }
 
 }//end class
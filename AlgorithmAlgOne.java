@@ -1,12 +1,13 @@
 package research;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -17,13 +18,18 @@ import java.util.Scanner;
  */
 public class AlgorithmAlgOne {
     
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy");
-    private static final DateTimeFormatter NEW_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-M-d");
+    private static final HmisDateParser DATES = new HmisDateParser();
     private static ArrayList<Client> clients = new ArrayList<>();
     private static HashMap<String, String> matchingClients = new HashMap<>();
     private static HashMap<Client, ArrayList<Client>> map = new HashMap<>();
     
-    public static void main(String[] args) throws FileNotFoundException, UnsupportedEncodingException{
+    /**
+     * the columns of Client.toString
+     */
+    private static final String CLIENT_HEADERS =
+            "PersonalId,FirstName,LastName,NameSuffix,NameDataQuality,SSN,SSNDataQuality,DOB,DOBDataQuality,Gender";
+    
+    public static void main(String[] args) throws IOException{
         final String SPECIAL_DATE = "1/1/1900";
         
         Scanner scanner = new Scanner(new File("Client.csv"), "UTF-8");
@@ -35,12 +41,16 @@ public class AlgorithmAlgOne {
          */
         int[] raceArray = {10, 11, 12, 13, 14, 15};
         
+        //blank, short and undated rows are skipped and counted
+        int rejected = 0;
+        
         while(scanner.hasNextLine()){
             String line = scanner.nextLine();
             String[] array = line.split(",");
             
-            if(array.length == 0){
-                break;
+            if(array.length < 18){
+                rejected++;
+                continue;
             }
             
             String personalId = array[0];
@@ -55,14 +65,13 @@ public class AlgorithmAlgOne {
             String ssnDataQuality = array[7];
             
             String dobS = array[8];
-            LocalDate dob;
-            try{
-                dob = LocalDate.parse(dobS, DATE_FORMAT);
-            }
-            catch(DateTimeParseException e){
-                dob = LocalDate.parse(dobS, NEW_DATE_FORMAT);
-                dobS = dob.format(DATE_FORMAT);
+            int dobEpochDay = DATES.parse(dobS);
+            if(dobEpochDay == HmisDateParser.INVALID){
+                rejected++;
+                continue;
             }
+            LocalDate dob = LocalDate.ofEpochDay(dobEpochDay);
+            dobS = HmisDateParser.format(dobEpochDay);
             
             // Special case
             if(!SPECIAL_DATE.equals(dobS)){
@@ -79,97 +88,83 @@ public class AlgorithmAlgOne {
                 }
             }
         }
-        
-        StringBuilder dobSb = new StringBuilder(
-                "PersonalId,FirstName,LastName,NameSuffix,NameDataQuality,SSN,SSNDataQuality,DOB,DOBDataQuality,Gender\n");
-        StringBuilder genderSb = new StringBuilder(
-                "PersonalId,FirstName,LastName,NameSuffix,NameDataQuality,SSN,SSNDataQuality,DOB,DOBDataQuality,Gender\n");
-        StringBuilder raceSb = new StringBuilder(headers + "\n");
-        
-        StringBuilder sb2 = new StringBuilder(headers + "\n");
-        
-        for(Map.Entry<Client, ArrayList<Client>> entry : map.entrySet()){
-            Client key = entry.getKey();
-            ArrayList<Client> value = entry.getValue();
-            
-            sb2 = sb2.append(key.getLine()).append('\n');
+        System.out.println("Rows skipped = " + rejected);
+        
+        //each report is written as its rows are found, with the resolved id
+        //of each row before it
+        new File("outputAlgOne").mkdirs();
+        try(Writer all = openReport("outputAlgOne/ClientOutput.csv", headers);
+            Writer dobs = openReport("outputAlgOne/ClientOutputDOB.csv", CLIENT_HEADERS);
+            Writer genders = openReport("outputAlgOne/ClientOutputGender.csv", CLIENT_HEADERS);
+            Writer races = openReport("outputAlgOne/ClientOutputRace.csv", headers)){
             
-            boolean dobKeyAdded = false;
-            boolean genderKeyAdded = false;
-            boolean raceKeyAdded = false;
-            
-            for(Client client : value){
-                sb2 = sb2.append(client.getLine()).append('\n');
-                
-                if(!key.getDobS().equals(client.getDobS())){
-                    if(!dobKeyAdded){
-                        dobSb = dobSb.append('\n').append(key.toString()).append('\n');
-                        dobKeyAdded = true;
-                    }
-                    dobSb = dobSb.append(client.toString()).append('\n');
-                }
-                
-                if(!key.getGender().equals(client.getGender())){
-                    if(!genderKeyAdded){
-                        genderSb = genderSb.append('\n').append(key.toString()).append('\n');
-                        genderKeyAdded = true;
-                    }
-                    genderSb = genderSb.append(client.toString()).append('\n');
-                }
+            for(Map.Entry<Client, ArrayList<Client>> entry : map.entrySet()){
+                Client key = entry.getKey();
+                ArrayList<Client> value = entry.getValue();
                 
-                /**
-                 * *** Race ****
-                 */
-                String keyLine = key.getLine();
-                String[] keyArray = keyLine.split(",");
-                StringBuilder keyRacesSb = new StringBuilder();
+                printRow(all, key.getPersonalId(), key.getLine());
                 
-                String clientLine = client.getLine();
-                String[] clientArray = clientLine.split(",");
-                StringBuilder clientRacesSb = new StringBuilder();
+                boolean dobKeyAdded = false;
+                boolean genderKeyAdded = false;
+                boolean raceKeyAdded = false;
                 
-                for(int i = raceArray[0]; i <= raceArray[raceArray.length - 1]; i++){
-                    keyRacesSb = keyRacesSb.append(keyArray[i]);
-                    clientRacesSb = clientRacesSb.append(clientArray[i]);
-                }
-                
-                String keyRaces = keyRacesSb.toString();
-                String clientRaces = clientRacesSb.toString();
-                
-                if(!keyRaces.equals(clientRaces)){
-                    if(!raceKeyAdded){
-                        raceSb = raceSb.append('\n').append(keyLine).append('\n');
-                        raceKeyAdded = true;
+                for(Client client : value){
+                    printRow(all, client.getPersonalId(), client.getLine());
+                    
+                    if(!key.getDobS().equals(client.getDobS())){
+                        if(!dobKeyAdded){
+                            dobs.write('\n');
+                            printRow(dobs, key.getPersonalId(), key.toString());
+                            dobKeyAdded = true;
+                        }
+                        printRow(dobs, client.getPersonalId(), client.toString());
+                    }
+                    
+                    if(!key.getGender().equals(client.getGender())){
+                        if(!genderKeyAdded){
+                            genders.write('\n');
+                            printRow(genders, key.getPersonalId(), key.toString());
+                            genderKeyAdded = true;
+                        }
+                        printRow(genders, client.getPersonalId(), client.toString());
+                    }
+                    
+                    /**
+                     * *** Race ****
+                     */
+                    String keyLine = key.getLine();
+                    String[] keyArray = keyLine.split(",");
+                    StringBuilder keyRacesSb = new StringBuilder();
+                    
+                    String clientLine = client.getLine();
+                    String[] clientArray = clientLine.split(",");
+                    StringBuilder clientRacesSb = new StringBuilder();
+                    
+                    for(int i = raceArray[0]; i <= raceArray[raceArray.length - 1]; i++){
+                        keyRacesSb = keyRacesSb.append(keyArray[i]);
+                        clientRacesSb = clientRacesSb.append(clientArray[i]);
+                    }
+                    
+                    String keyRaces = keyRacesSb.toString();
+                    String clientRaces = clientRacesSb.toString();
+                    
+                    if(!keyRaces.equals(clientRaces)){
+                        if(!raceKeyAdded){
+                            races.write('\n');
+                            printRow(races, key.getPersonalId(), keyLine);
+                            raceKeyAdded = true;
+                        }
+                        printRow(races, client.getPersonalId(), clientLine);
                     }
-                    raceSb = raceSb.append(clientLine).append('\n');
                 }
             }
         }
-        
-        printToFile("outputAlgOne/ClientOutput.csv", sb2.toString());
-        changePersonalIds("outputAlgOne/ClientOutput.csv");
-        
-        printToFile("outputAlgOne/ClientOutputDOB.csv", dobSb.toString());
-        printToFile("outputAlgOne/ClientOutputGender.csv", genderSb.toString());
-        printToFile("outputAlgOne/ClientOutputRace.csv", raceSb.toString());
-        
-        changePersonalIds("outputAlgOne/ClientOutputDOB.csv");
-        changePersonalIds("outputAlgOne/ClientOutputGender.csv");
-        changePersonalIds("outputAlgOne/ClientOutputRace.csv");
     }
     
     private static boolean checkTests(Client newClient){
         for(Client client : clients){
             if(checkTest1(newClient, client)){
-                try{
-                    map.get(client).add(newClient);
-                    
-                }
-                catch(NullPointerException e){
-                    ArrayList<Client> list = new ArrayList<>();
-                    list.add(newClient);
-                    map.put(client, list);
-                }
+                map.computeIfAbsent(client, c -> new ArrayList<>()).add(newClient);
                 return false;
             }
         }
@@ -219,54 +214,22 @@ public class AlgorithmAlgOne {
         return count;
     }
     
-    private static void printToFile(String filename,
-                                    String contents) throws FileNotFoundException, UnsupportedEncodingException{
-        try(PrintWriter pw = new PrintWriter(filename, "UTF-8")){
-            pw.println(contents);
-        }
+    /**
+     * Opens a report, with a NewPersonalID column before its other columns
+     */
+    private static Writer openReport(String filename, String headers) throws IOException{
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8));
+        writer.write("NewPersonalID," + headers + "\n");
+        return writer;
     }
     
-    private static void changePersonalIds(String filename) throws FileNotFoundException, UnsupportedEncodingException{
-        Scanner scanner = new Scanner(new File(filename), "UTF-8");
-        scanner = scanner.useDelimiter("[,\n]");
-        
-        String headers = scanner.nextLine();
-        String[] headersArray = headers.split(",");
-        headers = "NewPersonalID," + headers;
-        
-        int personalIdCol = -1;
-        for(int i = 0; i < headersArray.length; i++){
-            if("PersonalID".equals(headersArray[i])){
-                personalIdCol = i;
-                break;
-            }
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        sb = sb.append(headers).append('\n');
-        
-        while(scanner.hasNextLine()){
-            String line = scanner.nextLine();
-            
-            String[] array = line.split(",");
-            String personalId;
-            try{
-                personalId = array[personalIdCol];
-            }
-            catch(ArrayIndexOutOfBoundsException e){
-                break;
-            }
-            
-            if(matchingClients.containsKey(personalId)){
-                personalId = matchingClients.get(personalId);
-            }
-            
-            line = personalId + "," + line;
-            sb = sb.append(line).append('\n');
-        }
-        
-        String noExtensionFileName = filename.substring(0, filename.indexOf(".csv"));
-        
-        printToFile(filename, sb.toString());
+    /**
+     * Writes a row of a report after the personal id of the client it matched
+     */
+    private static void printRow(Writer report, String personalId, String row) throws IOException{
+        report.write(matchingClients.getOrDefault(personalId, personalId));
+        report.write(',');
+        report.write(row);
+        report.write('\n');
     }
 }
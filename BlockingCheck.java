@@ -0,0 +1,127 @@
+package research;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks the blocking index against the exhaustive scan it replaced
+ *
+ * Reads the Client.csv of an export, then, for every variant, compares every
+ * client with every earlier client, as isNewClient did before the blocking
+ * index, and reports each pair that passes test 1 or test 2 but that
+ * BlockingIndex does not offer as a candidate. Stays and households are not
+ * read, so the stay and household rules reject nothing, and the tests accept
+ * every pair they could accept in Algorithm1.
+ *
+ * Run on the fixture with
+ *
+ * java research.BlockingCheck fixtures/blocking/
+ *
+ * It exits with status 1 if the blocking index missed any match.
+ *
+ * @author Keith Grable
+ * @version 2018-04-16
+ */
+public class BlockingCheck {
+
+    private static final String FIXTURE_PATH = "fixtures/blocking/";
+
+    public static void main(String[] args) throws IOException {
+        File path = new File(args.length > 0 ? args[0] : FIXTURE_PATH);
+
+        ClientTable clients;
+        try (HmisExport export = new HmisExport(path)) {
+            clients = readClients(export);
+        }
+
+        TwinIndex twins = new TwinIndex();
+        BlockingIndex blockingIndex = new BlockingIndex(clients);
+        for (int row = 0; row < clients.size(); row++) {
+            twins.add(row, clients.getlNameCode(row), clients.getDobEpochDay(row), clients.getFirstEntry(row));
+            blockingIndex.add(row);
+        }
+
+        long missed = 0;
+        for (MatchVariant variant : MatchVariant.values()) {
+            MatchPipeline test1 = variant.createTest1(twins, false);
+            MatchPipeline test2 = variant.createTest2(twins, false);
+            ClientPair pair = new ClientPair(clients);
+
+            long matches = 0, variantMissed = 0;
+            for (int newClient = 0; newClient < clients.size(); newClient++) {
+                int[] candidates = blockingIndex.candidates(newClient, newClient);
+                for (int client = 0; client < newClient; client++) {
+                    pair.set(newClient, client);
+                    if (!test1.matches(pair) && !test2.matches(pair)) {
+                        continue;
+                    }
+                    matches++;
+                    if (Arrays.binarySearch(candidates, client) < 0) {
+                        variantMissed++;
+                        System.out.println("BLOCKING MISSED (" + variant.getName() + "): "
+                                + clients.getPersonalId(newClient) + " matches "
+                                + clients.getPersonalId(client));
+                    }
+                }
+            }
+
+            System.out.println(variant.getName() + ": " + matches + " matching pairs of "
+                    + clients.size() + " clients, " + variantMissed + " missed by blocking");
+            missed += variantMissed;
+        }
+
+        if (missed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads every client of Client.csv that has the columns the tests read
+     * and a readable DoB
+     */
+    private static ClientTable readClients(HmisExport export) throws IOException {
+        ClientTable clients = new ClientTable();
+
+        HmisCsvReader sc = export.openReader("Client.csv");
+        HmisSchema columns = new HmisSchema(sc, "Client.csv");
+        int personalIdColumn = columns.indexOf(HmisSchema.Column.PERSONAL_ID);
+        int fNameColumn = columns.indexOf(HmisSchema.Column.FIRST_NAME);
+        int lNameColumn = columns.indexOf(HmisSchema.Column.LAST_NAME);
+        int suffixColumn = columns.indexOf(HmisSchema.Column.NAME_SUFFIX);
+        int nameDataQualityColumn = columns.indexOf(HmisSchema.Column.NAME_DATA_QUALITY);
+        int ssnColumn = columns.indexOf(HmisSchema.Column.SSN);
+        int ssnDataQualityColumn = columns.indexOf(HmisSchema.Column.SSN_DATA_QUALITY);
+        int dobColumn = columns.indexOf(HmisSchema.Column.DOB);
+        int dobDataQualityColumn = columns.indexOf(HmisSchema.Column.DOB_DATA_QUALITY);
+        int raceNoneColumn = columns.indexOf(HmisSchema.Column.RACE_NONE);
+        sc.setLastField(columns.getLastIndex());
+
+        HmisDateParser dates = new HmisDateParser();
+
+        while (sc.next()) {
+            if (sc.getFieldCount() <= columns.getLastIndex() || sc.isEmpty(personalIdColumn)) {
+                continue;
+            }
+            int dob = dates.parse(sc, dobColumn);
+            if (dob == HmisDateParser.INVALID) {
+                continue;
+            }
+
+            ClientBatch batch = new ClientBatch(1);
+            batch.add(
+                    sc.getString(personalIdColumn), sc.getString(fNameColumn), sc.getString(lNameColumn),
+                    sc.getString(suffixColumn), sc.getString(nameDataQualityColumn),
+                    sc.getString(ssnColumn), sc.getString(ssnDataQualityColumn),
+                    dob, sc.getString(dobDataQualityColumn), columns.getGender(sc),
+                    columns.getRace(sc), sc.getString(raceNoneColumn)
+            );
+            batch.normalize();
+            clients.encode(batch);
+            clients.add(batch, 0);
+        }
+
+        sc.close();
+        return clients;
+    }
+}
@@ -0,0 +1,208 @@
+package research;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Groups clients by the field combinations that our match tests can agree on,
+ * so a new client is only compared with plausible candidates instead of every
+ * previous client
+ *
+ * A pair can only pass test 1 if the SSNs match, and can only pass test 2 if
+ * the SSNs match or at least two of first name, last name and DoB are equal.
+ * Every such pair shares at least one of these blocks:
+ *
+ * full SSN, last name + DoB, first name + DoB, first name + last name
+ *
+ * The key of each block of a client is worked out by keys, which can run on
+ * any thread, so add, which takes the clients in order, only puts the row in
+ * its blocks.
+ *
+ * @author Keith Grable
+ * @version 2018-03-20
+ */
+public class BlockingIndex {
+
+    /**
+     * the number of block keys of a client: its full SSN, last name + DoB,
+     * first name + DoB and first name + last name blocks, in that order
+     */
+    public static final int KEYS = 4;
+
+    /**
+     * the key of a block the client is not in, such as the last name + DoB
+     * block of a client with no last name
+     */
+    private static final long NO_BLOCK = Long.MIN_VALUE;
+
+    private final ClientTable table;
+
+    /**
+     * map a blocking key to the rows of the clients that have it, in the order
+     * they were added
+     */
+    private final HashMap<Long, Block> ssnBlocks = new HashMap<>();
+    private final HashMap<Long, Block> lNameDobBlocks = new HashMap<>();
+    private final HashMap<Long, Block> fNameDobBlocks = new HashMap<>();
+    private final HashMap<Long, Block> fNameLNameBlocks = new HashMap<>();
+
+    /**
+     * @param table the clients to index
+     */
+    public BlockingIndex(ClientTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Adds a client of the table to every block it belongs to
+     *
+     * @param row the row of the client in the table
+     */
+    public void add(int row) {
+        long[] keys = new long[KEYS];
+        keys(table.getfNameCode(row), table.getlNameCode(row), table.getDobEpochDay(row),
+                table.getSsnKey(row), table.isFullSsn(row) && table.isValidSsn(row), keys, 0);
+        add(row, keys, 0);
+    }
+
+    /**
+     * Adds a client to the blocks of the keys worked out for it by keys
+     *
+     * @param row the row of the client in the table
+     * @param keys holds the KEYS keys of the client from offset
+     */
+    public void add(int row, long[] keys, int offset) {
+        put(ssnBlocks, keys[offset], row);
+        put(lNameDobBlocks, keys[offset + 1], row);
+        put(fNameDobBlocks, keys[offset + 2], row);
+        put(fNameLNameBlocks, keys[offset + 3], row);
+    }
+
+    /**
+     * Works out the block keys of every client of an encoded batch
+     */
+    public static void keys(ClientBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            keys(batch.fNameCodes[i], batch.lNameCodes[i], batch.dobs[i], batch.ssnCodes[i],
+                    ClientTable.isFullValidSsn(batch.flags[i]), batch.blockKeys, KEYS * i);
+        }
+    }
+
+    /**
+     * Works out the block keys of a client
+     *
+     * @param fullValidSsn if the client is in the block of its SSN
+     * @param keys gets the KEYS keys from offset
+     */
+    private static void keys(int fName, int lName, int dob, long ssnKey, boolean fullValidSsn,
+            long[] keys, int offset) {
+        //name code 0 is the blank name
+        keys[offset] = fullValidSsn ? ssnKey : NO_BLOCK;
+        keys[offset + 1] = lName != 0 ? pair(lName, dob) : NO_BLOCK;
+        keys[offset + 2] = fName != 0 ? pair(fName, dob) : NO_BLOCK;
+        keys[offset + 3] = fName != 0 && lName != 0 ? pair(fName, lName) : NO_BLOCK;
+    }
+
+    /**
+     * Finds every client added before the given row that shares a block with
+     * the client in that row
+     *
+     * Safe to call from several threads once all clients have been added
+     *
+     * @param row the row of the client to find candidates for
+     * @param before only clients with a smaller row are returned
+     *
+     * @return the rows of the candidates, ascending and without repeats
+     */
+    public int[] candidates(int row, int before) {
+        int fName = table.getfNameCode(row), lName = table.getlNameCode(row);
+        int dob = table.getDobEpochDay(row);
+
+        Block[] found = new Block[4];
+        int blockCount = 0;
+        if (table.isValidSsn(row)) {
+            found[blockCount++] = ssnBlocks.get(table.getSsnKey(row));
+        }
+        if (lName != 0) {
+            found[blockCount++] = lNameDobBlocks.get(pair(lName, dob));
+        }
+        if (fName != 0) {
+            found[blockCount++] = fNameDobBlocks.get(pair(fName, dob));
+            if (lName != 0) {
+                found[blockCount++] = fNameLNameBlocks.get(pair(fName, lName));
+            }
+        }
+
+        //rows within a block are ascending, so the earlier clients come first
+        int size = 0;
+        for (int b = 0; b < blockCount; b++) {
+            if (found[b] != null) {
+                size += found[b].countBefore(before);
+            }
+        }
+
+        int[] rows = new int[size];
+        size = 0;
+        for (int b = 0; b < blockCount; b++) {
+            if (found[b] != null) {
+                int count = found[b].countBefore(before);
+                System.arraycopy(found[b].rows, 0, rows, size, count);
+                size += count;
+            }
+        }
+
+        //keep the order of the exhaustive scan
+        Arrays.sort(rows);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || rows[unique - 1] != rows[i]) {
+                rows[unique++] = rows[i];
+            }
+        }
+
+        return unique == size ? rows : Arrays.copyOf(rows, unique);
+    }
+
+    private static long pair(int first, int second) {
+        return (long) first << 32 | (second & 0xFFFFFFFFL);
+    }
+
+    private static void put(HashMap<Long, Block> blocks, long key, int row) {
+        if (key == NO_BLOCK) {
+            return;
+        }
+        Block block = blocks.get(key);
+        if (block == null) {
+            block = new Block();
+            blocks.put(key, block);
+        }
+        block.add(row);
+    }
+
+    /**
+     * A growable list of rows
+     */
+    private static class Block {
+
+        private int[] rows = new int[2];
+        private int size = 0;
+
+        private void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, 2 * size);
+            }
+            rows[size++] = row;
+        }
+
+        /**
+         * Number of rows in this block that are less than the given one
+         */
+        private int countBefore(int before) {
+            if (size == 0 || rows[size - 1] < before) {
+                return size;
+            }
+            int index = Arrays.binarySearch(rows, 0, size, before);
+            return index < 0 ? -index - 1 : index;
+        }
+    }
+}
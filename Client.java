@@ -38,6 +38,12 @@ public class Client {
     private String raceDataQuality;
 
     private String line;
+
+    /**
+     * bits naming the fields that ClientTable.equalFields compares
+     */
+    public static final int FNAME = 1, LNAME = 2, SUFFIX = 4, GENDER = 8,
+            DOB = 16, DAY = 32, MONTH = 64, YEAR = 128;
     
     /**
      * Constructs a ClientEntry from individual data fields
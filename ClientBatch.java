@@ -0,0 +1,168 @@
+package research;
+
+import java.time.LocalDate;
+
+/**
+ * Clients read from Client.csv that are not yet in the ClientTable
+ *
+ * The reader fills a batch with the values of each row. normalize,
+ * ClientTable.encode and BlockingIndex.keys then work out every value the
+ * table and the blocking index keep, and can run on any thread, so that
+ * ClientTable.add and BlockingIndex.add, which take the rows in file order,
+ * only copy them.
+ *
+ * @author Keith Grable
+ * @version 2018-04-10
+ */
+public class ClientBatch {
+
+    /**
+     * the ssn key of an ssn that is not all digits, which the table encodes
+     */
+    static final long NOT_NUMERIC = -1;
+
+    final String[] personalIds;
+    final String[] fNames;
+    final String[] lNames;
+    final String[] suffixes;
+    final String[] nameQualities;
+    final String[] ssns;
+    final String[] ssnQualities;
+    final int[] dobs;
+    final String[] dobQualities;
+    final String[] genders;
+    final String[] races;
+    final String[] raceQualities;
+
+    //
+    // FROM normalize
+    //
+    final short[] dobYears;
+    final byte[] dobMonths;
+    final byte[] dobDays;
+
+    /**
+     * the digits of an all-digit ssn and its length, or NOT_NUMERIC
+     */
+    final long[] ssnKeys;
+
+    //
+    // FROM ClientTable.encode
+    //
+    final int[] fNameCodes;
+    final int[] lNameCodes;
+    final int[] suffixCodes;
+    final short[] genderCodes;
+    final byte[] nameQualityCodes;
+    final byte[] ssnQualityCodes;
+    final byte[] dobQualityCodes;
+    final byte[] raceQualityCodes;
+    final int[] raceCodes;
+    final long[] ssnCodes;
+    final byte[] flags;
+    final long[] signatures;
+
+    //
+    // FROM BlockingIndex.keys
+    //
+    /**
+     * BlockingIndex.KEYS block keys per client
+     */
+    final long[] blockKeys;
+
+    private int size = 0;
+
+    public ClientBatch(int capacity) {
+        personalIds = new String[capacity];
+        fNames = new String[capacity];
+        lNames = new String[capacity];
+        suffixes = new String[capacity];
+        nameQualities = new String[capacity];
+        ssns = new String[capacity];
+        ssnQualities = new String[capacity];
+        dobs = new int[capacity];
+        dobQualities = new String[capacity];
+        genders = new String[capacity];
+        races = new String[capacity];
+        raceQualities = new String[capacity];
+        dobYears = new short[capacity];
+        dobMonths = new byte[capacity];
+        dobDays = new byte[capacity];
+        ssnKeys = new long[capacity];
+        fNameCodes = new int[capacity];
+        lNameCodes = new int[capacity];
+        suffixCodes = new int[capacity];
+        genderCodes = new short[capacity];
+        nameQualityCodes = new byte[capacity];
+        ssnQualityCodes = new byte[capacity];
+        dobQualityCodes = new byte[capacity];
+        raceQualityCodes = new byte[capacity];
+        raceCodes = new int[capacity];
+        ssnCodes = new long[capacity];
+        flags = new byte[capacity];
+        signatures = new long[capacity];
+        blockKeys = new long[BlockingIndex.KEYS * capacity];
+    }
+
+    /**
+     * Adds a client read from the file
+     */
+    public void add(
+            String personalId, String fName, String lName, String suffix, String nameDataQuality,
+            String ssn, String ssnDataQuality, int dobEpochDay, String dobDataQuality,
+            String gender, String race, String raceDataQuality
+    ) {
+        int i = size++;
+        personalIds[i] = personalId;
+        fNames[i] = fName;
+        lNames[i] = lName;
+        suffixes[i] = suffix;
+        nameQualities[i] = nameDataQuality;
+        ssns[i] = ssn;
+        ssnQualities[i] = ssnDataQuality;
+        dobs[i] = dobEpochDay;
+        dobQualities[i] = dobDataQuality;
+        genders[i] = gender;
+        races[i] = race;
+        raceQualities[i] = raceDataQuality;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == personalIds.length;
+    }
+
+    /**
+     * Splits each DoB into year, month and day, and turns each all-digit ssn
+     * into a number
+     */
+    public void normalize() {
+        for (int i = 0; i < size; i++) {
+            LocalDate dob = LocalDate.ofEpochDay(dobs[i]);
+            dobYears[i] = (short) dob.getYear();
+            dobMonths[i] = (byte) dob.getMonthValue();
+            dobDays[i] = (byte) dob.getDayOfMonth();
+
+            ssnKeys[i] = toSsnKey(ssns[i]);
+        }
+    }
+
+    private static long toSsnKey(String ssn) {
+        if (ssn.isEmpty() || ssn.length() > 17) {
+            return NOT_NUMERIC;
+        }
+        long key = 0;
+        for (int i = 0; i < ssn.length(); i++) {
+            char c = ssn.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_NUMERIC;
+            }
+            key = 10 * key + (c - '0');
+        }
+        //"123" and "0123" are different ssns
+        return 20 * key + ssn.length();
+    }
+}
@@ -0,0 +1,62 @@
+package research;
+
+/**
+ * A pair of clients being compared
+ *
+ * The results of the expensive filters are kept, so that test 1 and test 2
+ * work them out only once for the pair. One ClientPair is reused for every
+ * pair a thread compares.
+ *
+ * @author Keith Grable
+ * @version 2018-03-26
+ */
+public class ClientPair {
+
+    private static final byte UNKNOWN = 0, NO = 1, YES = 2;
+
+    private final ClientTable table;
+
+    private int newClient;
+    private int client;
+
+    private byte stayConflict;
+
+    public ClientPair(ClientTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Moves on to another pair, forgetting the results of the last one
+     *
+     * @param newClient the row of the client being matched
+     * @param client the row of an earlier client
+     */
+    public void set(int newClient, int client) {
+        this.newClient = newClient;
+        this.client = client;
+        stayConflict = UNKNOWN;
+    }
+
+    public ClientTable getTable() {
+        return table;
+    }
+
+    public int getNewClient() {
+        return newClient;
+    }
+
+    public int getClient() {
+        return client;
+    }
+
+    /**
+     * If the two clients were in different projects at the same time
+     */
+    public boolean hasStayConflict() {
+        if (stayConflict == UNKNOWN) {
+            stayConflict = StayIndex.hasConflict(table.getStays(newClient), table.getStays(client))
+                    ? YES : NO;
+        }
+        return stayConflict == YES;
+    }
+}
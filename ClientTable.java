@@ -0,0 +1,465 @@
+package research;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * All clients read from Client.csv, stored column by column
+ *
+ * Each client is a row, numbered in the order it was added. Names, race and
+ * data quality values are stored as dictionary codes, the DoB as an epoch day
+ * and the SSN as a long. The day, month and year of the DoB are read from the
+ * field signature, which holds them exactly, so the columns the match tests
+ * read take 35 bytes per row; the data quality and race values, which they do
+ * not read, take 8 more. The original line is not kept; the output is
+ * rewritten from the input files.
+ *
+ * @author Keith Grable
+ * @version 2018-03-24
+ */
+public class ClientTable {
+
+    /**
+     * bits of the flags column
+     */
+    private static final byte VALID_SSN = 1, FULL_SSN = 2;
+
+    private int size = 0;
+    private int capacity = 1024;
+
+    private final StringDictionary names = new StringDictionary();
+    private final StringDictionary genderValues = new StringDictionary();
+    private final StringDictionary qualityValues = new StringDictionary();
+    private final StringDictionary raceValues = new StringDictionary();
+    private final StringDictionary ssnValues = new StringDictionary();
+
+    //
+    // COLUMNS READ BY THE MATCH TESTS
+    //
+    private int[] fNames = new int[capacity];
+    private int[] lNames = new int[capacity];
+    private int[] suffixes = new int[capacity];
+
+    private int[] dobs = new int[capacity];
+
+    /**
+     * a short, as a gender since FY2022 is any set of up to ten gender
+     * columns, which is more values than a byte holds
+     */
+    private short[] genders = new short[capacity];
+
+    /**
+     * the digits of an all-digit ssn and its length, or the negative
+     * dictionary code of any other ssn
+     */
+    private long[] ssns = new long[capacity];
+
+    private byte[] flags = new byte[capacity];
+
+    /**
+     * one byte per compared field, from FieldSignature, and the day, month
+     * and year of the DoB
+     */
+    private long[] signatures = new long[capacity];
+
+    /**
+     * sorted, merged stays in projects, from StayIndex
+     */
+    private long[][] stays = new long[capacity][];
+
+    /**
+     * sorted household codes, from HouseholdIndex
+     */
+    private int[][] households = new int[capacity][];
+
+    /**
+     * epoch day of the first entry in any project, or TwinIndex.NO_ENTRY
+     */
+    private int[] firstEntries = new int[capacity];
+
+    //
+    // VALUES THE MATCH TESTS DO NOT READ
+    //
+    private byte[] nameQualities = new byte[capacity];
+    private byte[] ssnQualities = new byte[capacity];
+    private byte[] dobQualities = new byte[capacity];
+    private byte[] raceQualities = new byte[capacity];
+
+    private int[] races = new int[capacity];
+
+    //
+    // COLUMNS FOR OUTPUT
+    //
+    private String[] personalIds = new String[capacity];
+
+    /**
+     * Encodes the values of a normalized batch with the dictionaries of the
+     * table, and builds the flags and signature of each client, so add only
+     * copies them
+     *
+     * Safe to call from several threads, for different batches. Equal values
+     * get equal codes whichever batch encodes them first, and codes are only
+     * ever compared for equality.
+     */
+    public void encode(ClientBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            int fName = names.encode(batch.fNames[i]);
+            int lName = names.encode(batch.lNames[i]);
+            int suffix = names.encode(batch.suffixes[i]);
+            short gender = toShort(genderValues.encode(batch.genders[i]));
+            batch.fNameCodes[i] = fName;
+            batch.lNameCodes[i] = lName;
+            batch.suffixCodes[i] = suffix;
+            batch.genderCodes[i] = gender;
+
+            String ssn = batch.ssns[i];
+            String ssnDataQuality = batch.ssnQualities[i];
+            batch.nameQualityCodes[i] = toByte(qualityValues.encode(batch.nameQualities[i]));
+            batch.ssnQualityCodes[i] = toByte(qualityValues.encode(ssnDataQuality));
+            batch.dobQualityCodes[i] = toByte(qualityValues.encode(batch.dobQualities[i]));
+            batch.raceQualityCodes[i] = toByte(qualityValues.encode(batch.raceQualities[i]));
+
+            long ssnKey = batch.ssnKeys[i];
+            batch.ssnCodes[i] = ssnKey != ClientBatch.NOT_NUMERIC ? ssnKey : -ssnValues.encode(ssn);
+            batch.flags[i] = (byte) ((!"999999999".equals(ssn) && !"000000000".equals(ssn) ? VALID_SSN : 0)
+                    | ("1".equals(ssnDataQuality) ? FULL_SSN : 0));
+
+            batch.raceCodes[i] = raceValues.encode(batch.races[i]);
+            batch.signatures[i] = FieldSignature.pack(fName, lName, suffix, gender & 0xFFFF,
+                    batch.dobs[i], batch.dobDays[i], batch.dobMonths[i], batch.dobYears[i]);
+        }
+    }
+
+    /**
+     * Adds a client of an encoded batch
+     *
+     * @return the row of the client
+     */
+    public int add(ClientBatch batch, int i) {
+        if (size == capacity) {
+            grow();
+        }
+        int row = size++;
+
+        personalIds[row] = batch.personalIds[i];
+        fNames[row] = batch.fNameCodes[i];
+        lNames[row] = batch.lNameCodes[i];
+        suffixes[row] = batch.suffixCodes[i];
+        dobs[row] = batch.dobs[i];
+        genders[row] = batch.genderCodes[i];
+        nameQualities[row] = batch.nameQualityCodes[i];
+        ssnQualities[row] = batch.ssnQualityCodes[i];
+        dobQualities[row] = batch.dobQualityCodes[i];
+        raceQualities[row] = batch.raceQualityCodes[i];
+        ssns[row] = batch.ssnCodes[i];
+        flags[row] = batch.flags[i];
+        races[row] = batch.raceCodes[i];
+        signatures[row] = batch.signatures[i];
+        stays[row] = StayIndex.NO_STAYS;
+        households[row] = HouseholdIndex.NO_HOUSEHOLDS;
+        firstEntries[row] = TwinIndex.NO_ENTRY;
+
+        return row;
+    }
+
+    private static short toShort(int code) {
+        if (code > 0xFFFF) {
+            throw new IllegalArgumentException("More than 65536 distinct values in a short column");
+        }
+        return (short) code;
+    }
+
+    private static byte toByte(int code) {
+        if (code > 255) {
+            throw new IllegalArgumentException("More than 256 distinct values in a byte column");
+        }
+        return (byte) code;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        fNames = Arrays.copyOf(fNames, capacity);
+        lNames = Arrays.copyOf(lNames, capacity);
+        suffixes = Arrays.copyOf(suffixes, capacity);
+        dobs = Arrays.copyOf(dobs, capacity);
+        genders = Arrays.copyOf(genders, capacity);
+        nameQualities = Arrays.copyOf(nameQualities, capacity);
+        ssnQualities = Arrays.copyOf(ssnQualities, capacity);
+        dobQualities = Arrays.copyOf(dobQualities, capacity);
+        raceQualities = Arrays.copyOf(raceQualities, capacity);
+        ssns = Arrays.copyOf(ssns, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        races = Arrays.copyOf(races, capacity);
+        signatures = Arrays.copyOf(signatures, capacity);
+        stays = Arrays.copyOf(stays, capacity);
+        households = Arrays.copyOf(households, capacity);
+        firstEntries = Arrays.copyOf(firstEntries, capacity);
+        personalIds = Arrays.copyOf(personalIds, capacity);
+    }
+
+    /**
+     * @return the number of clients
+     */
+    public int size() {
+        return size;
+    }
+
+    //
+    // COMPARISONS
+    //
+    /**
+     * Compares the given fields of two clients
+     *
+     * @param fields the fields to compare, as Client.FNAME, Client.LNAME, ...
+     * bits
+     *
+     * @return the bits of the fields that are equal
+     */
+    public int equalFields(int a, int b, int fields) {
+        int equal = (fNames[a] == fNames[b] ? Client.FNAME : 0)
+                | (lNames[a] == lNames[b] ? Client.LNAME : 0)
+                | (suffixes[a] == suffixes[b] ? Client.SUFFIX : 0)
+                | (genders[a] == genders[b] ? Client.GENDER : 0);
+        if (dobs[a] == dobs[b]) {
+            equal |= Client.DOB | Client.DAY | Client.MONTH | Client.YEAR;
+        } else {
+            long signatureA = signatures[a], signatureB = signatures[b];
+            int year = FieldSignature.getYearByte(signatureA);
+            equal |= (FieldSignature.getDay(signatureA) == FieldSignature.getDay(signatureB) ? Client.DAY : 0)
+                    | (FieldSignature.getMonth(signatureA) == FieldSignature.getMonth(signatureB) ? Client.MONTH : 0)
+                    | (year == FieldSignature.getYearByte(signatureB)
+                    && (year != FieldSignature.OTHER_YEAR || getDob(a).getYear() == getDob(b).getYear())
+                    ? Client.YEAR : 0);
+        }
+        return equal & fields;
+    }
+
+    /**
+     * @return the bits of Client.FNAME, LNAME, SUFFIX and GENDER that are blank
+     * for the client; DoB fields are never blank
+     */
+    public int getBlankFields(int row) {
+        return (fNames[row] == 0 ? Client.FNAME : 0) | (lNames[row] == 0 ? Client.LNAME : 0)
+                | (suffixes[row] == 0 ? Client.SUFFIX : 0) | (genders[row] == 0 ? Client.GENDER : 0);
+    }
+
+    /**
+     * @return the field signature of the client, for rejecting pairs before
+     * comparing fields one at a time
+     */
+    public long getSignature(int row) {
+        return signatures[row];
+    }
+
+    /**
+     * If the ssns are the same string
+     */
+    public boolean hasSameSsn(int a, int b) {
+        return ssns[a] == ssns[b];
+    }
+
+    /**
+     * If the ssn is not one of the placeholder values 999999999 or 000000000
+     */
+    public boolean isValidSsn(int row) {
+        return (flags[row] & VALID_SSN) != 0;
+    }
+
+    /**
+     * If the SSN data quality says the ssn is complete
+     */
+    public boolean isFullSsn(int row) {
+        return (flags[row] & FULL_SSN) != 0;
+    }
+
+    /**
+     * If the flags of a client, as encode builds them, are of a full, valid
+     * ssn
+     */
+    static boolean isFullValidSsn(byte flags) {
+        return (flags & (FULL_SSN | VALID_SSN)) == (FULL_SSN | VALID_SSN);
+    }
+
+    /**
+     * @return the sorted, merged stays of the client as entry, exit, entry,
+     * exit, ... epoch days
+     */
+    public long[] getStays(int row) {
+        return stays[row];
+    }
+
+    public void setStays(int row, long[] clientStays) {
+        stays[row] = clientStays;
+    }
+
+    /**
+     * @return the sorted codes of every household the client was enrolled in
+     */
+    public int[] getHouseholds(int row) {
+        return households[row];
+    }
+
+    public void setHouseholds(int row, int[] clientHouseholds) {
+        households[row] = clientHouseholds;
+    }
+
+    /**
+     * @return the epoch day the client first entered a project, or
+     * TwinIndex.NO_ENTRY
+     */
+    public int getFirstEntry(int row) {
+        return firstEntries[row];
+    }
+
+    public void setFirstEntry(int row, int epochDay) {
+        firstEntries[row] = epochDay;
+    }
+
+    //
+    // KEYS FOR INDEXING
+    //
+    public int getfNameCode(int row) {
+        return fNames[row];
+    }
+
+    public int getlNameCode(int row) {
+        return lNames[row];
+    }
+
+    public long getSsnKey(int row) {
+        return ssns[row];
+    }
+
+    public int getDobEpochDay(int row) {
+        return dobs[row];
+    }
+
+    //
+    // VALUES
+    //
+    public String getPersonalId(int row) {
+        return personalIds[row];
+    }
+
+    public String getfName(int row) {
+        return names.decode(fNames[row]);
+    }
+
+    public String getlName(int row) {
+        return names.decode(lNames[row]);
+    }
+
+    public String getSuffix(int row) {
+        return names.decode(suffixes[row]);
+    }
+
+    public String getNameDataQuality(int row) {
+        return qualityValues.decode(nameQualities[row] & 0xFF);
+    }
+
+    public String getSsnDataQuality(int row) {
+        return qualityValues.decode(ssnQualities[row] & 0xFF);
+    }
+
+    public LocalDate getDob(int row) {
+        return LocalDate.ofEpochDay(dobs[row]);
+    }
+
+    public String getDobDataQuality(int row) {
+        return qualityValues.decode(dobQualities[row] & 0xFF);
+    }
+
+    public String getGender(int row) {
+        return genderValues.decode(genders[row] & 0xFFFF);
+    }
+
+    public String getRace(int row) {
+        return raceValues.decode(races[row]);
+    }
+
+    public String getRaceDataQuality(int row) {
+        return qualityValues.decode(raceQualities[row] & 0xFF);
+    }
+
+    //
+    // SNAPSHOTS
+    //
+    /**
+     * Writes every column, for SnapshotCache
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        names.writeTo(out);
+        genderValues.writeTo(out);
+        qualityValues.writeTo(out);
+        raceValues.writeTo(out);
+        ssnValues.writeTo(out);
+
+        SnapshotCache.writeInts(out, fNames, size);
+        SnapshotCache.writeInts(out, lNames, size);
+        SnapshotCache.writeInts(out, suffixes, size);
+        SnapshotCache.writeInts(out, dobs, size);
+        SnapshotCache.writeShorts(out, genders, size);
+        out.write(nameQualities, 0, size);
+        out.write(ssnQualities, 0, size);
+        out.write(dobQualities, 0, size);
+        out.write(raceQualities, 0, size);
+        SnapshotCache.writeLongs(out, ssns, size);
+        out.write(flags, 0, size);
+        SnapshotCache.writeInts(out, races, size);
+        SnapshotCache.writeLongs(out, signatures, size);
+        SnapshotCache.writeInts(out, firstEntries, size);
+
+        for (int row = 0; row < size; row++) {
+            out.writeInt(stays[row].length);
+            SnapshotCache.writeLongs(out, stays[row], stays[row].length);
+            out.writeInt(households[row].length);
+            SnapshotCache.writeInts(out, households[row], households[row].length);
+            SnapshotCache.writeString(out, personalIds[row]);
+        }
+    }
+
+    /**
+     * Reads the columns written by writeTo into an empty table
+     */
+    void readFrom(ByteBuffer in) {
+        int count = in.getInt();
+        names.readFrom(in);
+        genderValues.readFrom(in);
+        qualityValues.readFrom(in);
+        raceValues.readFrom(in);
+        ssnValues.readFrom(in);
+
+        capacity = Math.max(capacity, count);
+        fNames = SnapshotCache.readInts(in, count, capacity);
+        lNames = SnapshotCache.readInts(in, count, capacity);
+        suffixes = SnapshotCache.readInts(in, count, capacity);
+        dobs = SnapshotCache.readInts(in, count, capacity);
+        genders = SnapshotCache.readShorts(in, count, capacity);
+        nameQualities = SnapshotCache.readBytes(in, count, capacity);
+        ssnQualities = SnapshotCache.readBytes(in, count, capacity);
+        dobQualities = SnapshotCache.readBytes(in, count, capacity);
+        raceQualities = SnapshotCache.readBytes(in, count, capacity);
+        ssns = SnapshotCache.readLongs(in, count, capacity);
+        flags = SnapshotCache.readBytes(in, count, capacity);
+        races = SnapshotCache.readInts(in, count, capacity);
+        signatures = SnapshotCache.readLongs(in, count, capacity);
+        firstEntries = SnapshotCache.readInts(in, count, capacity);
+
+        stays = new long[capacity][];
+        households = new int[capacity][];
+        personalIds = new String[capacity];
+        for (int row = 0; row < count; row++) {
+            int length = in.getInt();
+            stays[row] = length == 0 ? StayIndex.NO_STAYS : SnapshotCache.readLongs(in, length, length);
+            length = in.getInt();
+            households[row] = length == 0 ? HouseholdIndex.NO_HOUSEHOLDS
+                    : SnapshotCache.readInts(in, length, length);
+            personalIds[row] = SnapshotCache.readString(in);
+        }
+        size = count;
+    }
+}
@@ -0,0 +1,499 @@
+package research;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+
+/**
+ * Rewrites the CSV files of an export line by line, many files at a time
+ *
+ * Each file is a task of its own, and a large file in a directory is split
+ * into ranges of whole lines, each a task that writes its own part; the
+ * parts are then joined in order with FileChannel.transferTo. Lines are read
+ * and written through NIO channels in large buffers. A file in a zip can only
+ * be read from the start, so it is one range.
+ *
+ * A rewrite only puts bytes before each line. The line itself, with its line
+ * end, is copied from the read buffer to the write buffer as it is, so no
+ * line is decoded and the output is the input apart from what was put
+ * before each line.
+ *
+ * The header of a file is rewritten before any of its lines, so the rewrite
+ * can find its columns there; its lines are then rewritten on any thread.
+ *
+ * A file is written under a temporary name and renamed once it is complete,
+ * so an output file that exists is never a partial one.
+ *
+ * The CRC32 of each range is taken from the write buffer as it is written,
+ * and those of the ranges of a file are combined, so the CRC32 of an output
+ * is known without reading it back.
+ *
+ * @author Keith Grable
+ * @version 2018-04-12
+ */
+public class CsvRewriter {
+
+    /**
+     * How the lines of one file are rewritten
+     */
+    public interface Rewrite {
+
+        /**
+         * @param header the first line of the file, without its line end
+         * @return the bytes to put before the header
+         */
+        byte[] header(String header);
+
+        /**
+         * @param bytes holds a line of the file after the header, from start
+         * up to end, without its line end; not to be changed
+         * @return the bytes to put before the line, or null for none
+         */
+        byte[] line(byte[] bytes, int start, int end);
+    }
+
+    private static final int READ_SIZE = 1 << 20;
+    private static final int WRITE_SIZE = 1 << 20;
+
+    private final ExecutorService executor;
+
+    private final long rangeSize;
+
+    /**
+     * @param executor runs the ranges of every file
+     * @param rangeSize the size in bytes over which a file is split into
+     * more than one range
+     */
+    public CsvRewriter(ExecutorService executor, long rangeSize) {
+        this.executor = executor;
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * Starts rewriting a CSV of an export to a file
+     *
+     * @return the CRC32 of the output, once it is complete; fails with an
+     * UncheckedIOException if the file could not be rewritten
+     */
+    public CompletableFuture<Long> rewrite(HmisExport input, String name, File output, Rewrite rewrite)
+            throws IOException {
+        File temp = new File(output.getPath() + ".tmp");
+        File file = input.getFile(name);
+        if (file == null) {
+            byte[] header;
+            try (ReadableByteChannel in = Channels.newChannel(input.openStream(name))) {
+                header = rewrite.header(readFirstLine(in));
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                try (ReadableByteChannel in = Channels.newChannel(input.openStream(name))) {
+                    long crc = copyRange(in, temp, header, rewrite);
+                    replace(temp, output);
+                    return crc;
+                } catch (IOException e) {
+                    temp.delete();
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            byte[] header = rewrite.header(readFirstLine(range(channel, 0, size)));
+
+            //ranges start on line starts, so no line is split between two
+            int count = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (size + rangeSize - 1) / rangeSize));
+            long[] bounds = new long[count + 1];
+            bounds[count] = size;
+            for (int i = 1; i < count; i++) {
+                bounds[i] = nextLineStart(channel, Math.max(bounds[i - 1], i * (size / count)), size);
+            }
+
+            File[] parts = new File[count];
+            long[] crcs = new long[count];
+            long[] lengths = new long[count];
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[count];
+            for (int i = 0; i < count; i++) {
+                parts[i] = count == 1 ? temp : new File(output.getPath() + ".part" + i);
+                long start = bounds[i], end = bounds[i + 1];
+                File part = parts[i];
+                byte[] first = i == 0 ? header : null;
+                int index = i;
+                tasks[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        crcs[index] = copyRange(range(channel, start, end), part, first, rewrite);
+                        lengths[index] = part.length();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor);
+            }
+
+            return CompletableFuture.allOf(tasks).whenComplete((done, failure) -> {
+                try {
+                    channel.close();
+                    if (failure != null) {
+                        for (File part : parts) {
+                            part.delete();
+                        }
+                        return;
+                    }
+                    if (count > 1) {
+                        join(parts, temp);
+                    }
+                    replace(temp, output);
+                } catch (IOException e) {
+                    temp.delete();
+                    throw new UncheckedIOException(e);
+                }
+            }).thenApply(done -> {
+                long crc = crcs[0];
+                for (int i = 1; i < count; i++) {
+                    crc = combineCrc32(crc, crcs[i], lengths[i]);
+                }
+                return crc;
+            });
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the lines of a range to a file, each after the bytes the rewrite
+     * puts before it
+     *
+     * @param header the bytes to put before the header, if the range starts
+     * with it
+     * @return the CRC32 of the bytes written
+     */
+    private static long copyRange(ReadableByteChannel in, File output, byte[] header, Rewrite rewrite)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+            ByteBuffer written = ByteBuffer.allocateDirect(WRITE_SIZE);
+
+            byte[] first = header;
+            boolean end = false;
+            while (!end) {
+                if (!buffer.hasRemaining()) {
+                    //a line longer than the buffer
+                    ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+                    buffer.flip();
+                    buffer = larger.put(buffer);
+                }
+                end = in.read(buffer) < 0;
+                buffer.flip();
+
+                byte[] bytes = buffer.array();
+                int offset = buffer.arrayOffset();
+                int start = buffer.position();
+                int limit = buffer.limit();
+                for (int i = start; i < limit; i++) {
+                    if (bytes[offset + i] == '\n') {
+                        copyLine(out, written, crc, bytes, offset + start, offset + i + 1, first, rewrite);
+                        first = null;
+                        start = i + 1;
+                    }
+                }
+                //the last line may have no line end
+                if (end && start < limit) {
+                    copyLine(out, written, crc, bytes, offset + start, offset + limit, first, rewrite);
+                    start = limit;
+                }
+
+                buffer.position(start);
+                buffer.compact();
+            }
+
+            flush(out, written, crc);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the bytes put before a line, then the line as it is
+     *
+     * @param start the first byte of the line
+     * @param end the byte after its line end, if it has one
+     * @param header the bytes to put before the line if it is the header,
+     * otherwise null
+     */
+    private static void copyLine(FileChannel out, ByteBuffer written, CRC32 crc, byte[] bytes, int start, int end,
+            byte[] header, Rewrite rewrite) throws IOException {
+        int lineEnd = end;
+        if (lineEnd > start && bytes[lineEnd - 1] == '\n') {
+            lineEnd--;
+        }
+        if (lineEnd > start && bytes[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        byte[] prefix = header != null ? header : rewrite.line(bytes, start, lineEnd);
+        if (prefix != null) {
+            write(out, written, crc, prefix, 0, prefix.length);
+        }
+        write(out, written, crc, bytes, start, end - start);
+    }
+
+    /**
+     * Writes bytes through a buffer, emptying it to the channel whenever it
+     * fills
+     */
+    private static void write(FileChannel out, ByteBuffer buffer, CRC32 crc, byte[] bytes, int offset, int length)
+            throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            if (!buffer.hasRemaining()) {
+                flush(out, buffer, crc);
+            }
+            int count = Math.min(buffer.remaining(), end - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Empties a buffer to the channel, adding its bytes to the CRC32
+     */
+    private static void flush(FileChannel out, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        buffer.mark();
+        crc.update(buffer);
+        buffer.reset();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the CRC32 of two blocks of bytes one after the other, from the
+     * CRC32 of each and the length of the second, as zlib's crc32_combine
+     * works it out
+     */
+    static long combineCrc32(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        //the operator for one zero bit, then for two, then four
+        long[] odd = new long[32];
+        long[] even = new long[32];
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd);
+        square(odd, even);
+
+        //apply the operators for the zero bytes of length2, a bit at a time
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    /**
+     * @return the bytes from start up to end as a String, without a carriage
+     * return at the end
+     */
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the first line of a channel, without its line end
+     */
+    private static String readFirstLine(ReadableByteChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (true) {
+            int before = buffer.position();
+            boolean end = in.read(buffer) < 0;
+            for (int i = before; i < buffer.position(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return decode(buffer, 0, i);
+                }
+            }
+            if (end) {
+                return decode(buffer, 0, buffer.position());
+            }
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+                buffer.flip();
+                buffer = larger.put(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return the offset just after the first line end at or after position,
+     * or size if there is none
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * @return a channel of the bytes of a file from start up to end; ranges
+     * of the same file can be read at the same time
+     */
+    private static ReadableByteChannel range(FileChannel channel, long start, long end) {
+        return new ReadableByteChannel() {
+
+            private long position = start;
+
+            @Override
+            public int read(ByteBuffer buffer) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                int limit = buffer.limit();
+                buffer.limit((int) Math.min(limit, buffer.position() + end - position));
+                int read = channel.read(buffer, position);
+                buffer.limit(limit);
+                if (read < 0) {
+                    return -1;
+                }
+                position += read;
+                return read;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() {
+                //the file channel is shared by every range
+            }
+        };
+    }
+
+    /**
+     * @return a value as a CSV field: in quotes, with quotes doubled, if it
+     * has a comma, quote or line break, and otherwise as it is
+     */
+    static String toField(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of a CSV field, as HmisCsvReader reads it: without
+     * its quotes and with doubled quotes made single
+     */
+    static String fromField(String field) {
+        if (!field.startsWith("\"")) {
+            return field;
+        }
+        StringBuilder value = new StringBuilder(field.length());
+        for (int i = 1; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                if (i + 1 < field.length() && field.charAt(i + 1) == '"') {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            value.append(c);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Renames a complete file to its output, replacing any old output in one
+     * step
+     */
+    static void replace(File temp, File output) throws IOException {
+        Files.move(temp.toPath(), output.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Joins the parts of a file in order, and deletes them
+     */
+    private static void join(File[] parts, File output) throws IOException {
+        try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (File part : parts) {
+                try (FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long position = 0; position < size;) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+                if (!part.delete()) {
+                    throw new IOException("Could not delete " + part);
+                }
+            }
+        }
+    }
+}
@@ -2,15 +2,12 @@ package research;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Data program
@@ -26,21 +23,14 @@ public class DataAnalysis {
     //CONSTANTS THAT CONCERN DATES
     //
     /**
-     * the standard date format for our data
+     * parses M/d/yyyy, yyyy-M-d and timestamps into epoch days
      */
-    private static final DateTimeFormatter DATE_FORMAT
-            = DateTimeFormatter.ofPattern("M/d/yyyy");
+    private static final HmisDateParser DATES = new HmisDateParser();
 
     /**
-     * an atypical date format for our data
+     * maps personal ids to the epoch day of their first entry
      */
-    private static final DateTimeFormatter NEW_DATE_FORMAT
-            = DateTimeFormatter.ofPattern("yyyy-M-d");
-
-    /**
-     * maps personal ids to dates of entry
-     */
-    private static final HashMap<String, LocalDate> ENTRY_DATES = new HashMap<>();
+    private static final HashMap<String, Integer> FIRST_ENTRIES = new HashMap<>();
 
     /**
      * indicates that DoB was not given
@@ -55,6 +45,16 @@ public class DataAnalysis {
      */
     private static ArrayList<Client> entries = new ArrayList<>();
 
+    /**
+     * maps personal ids to their index in entries
+     */
+    private static HashMap<String, Integer> rows = new HashMap<>();
+
+    /**
+     * entries grouped by last name and DoB, for the twin checks
+     */
+    private static final TwinIndex TWINS = new TwinIndex();
+
     /**
      * maps personal ids that represent duplicate entries, according to our
      * tests
@@ -89,6 +89,16 @@ public class DataAnalysis {
     private static HashMap<String, HashSet<Client>> genderGroupMap = new HashMap<>();
     private static HashMap<String, HashSet<Client>> raceGroupMap = new HashMap<>();
 
+    /**
+     * the group of a value no client has had yet
+     */
+    private static final HashSet<Client> NO_CLIENTS = new HashSet<>();
+
+    /**
+     * rows of the input that were not read, written to output/Rejects.csv
+     */
+    private static final RejectLog REJECTS = new RejectLog(new File("./output/Rejects.csv"));
+
     /**
      * Arrays to count frequency of field matches for various groups
      */
@@ -138,26 +148,34 @@ public class DataAnalysis {
      * Reads the client.csv file, gathering data about matches
      *
      *
-     * @throws java.io.FileNotFoundException
-     * @throws java.io.UnsupportedEncodingException
+     * @throws java.io.IOException
      * @main
      */
-    public static void main(String[] args) throws FileNotFoundException, UnsupportedEncodingException {
+    public static void main(String[] args) throws IOException {
 
         getEntriesDates();
 
         //reads the file
-        Scanner sc = new Scanner(new File(INPUT_PATH + "Client.csv"), "UTF-8");
+        HmisCsvReader sc = new HmisCsvReader(new File(INPUT_PATH + "Client.csv"));
 
         System.out.println("READING FROM: " + INPUT_PATH + "Client.csv ...");
 
-        // split it up by commas (considering it is a CSV)
-        sc = sc.useDelimiter("[,\n]");
-
-        // column header
-        String headers = sc.nextLine();
-        StringBuilder sb = new StringBuilder();
-        sb = sb.append(headers).append('\n');
+        // columns, found by name in the header
+        HmisSchema columns = new HmisSchema(sc, "Client.csv");
+        int personalIdColumn = columns.indexOf(HmisSchema.Column.PERSONAL_ID);
+        int fNameColumn = columns.indexOf(HmisSchema.Column.FIRST_NAME);
+        int lNameColumn = columns.indexOf(HmisSchema.Column.LAST_NAME);
+        int suffixColumn = columns.indexOf(HmisSchema.Column.NAME_SUFFIX);
+        int nameDataQualityColumn = columns.indexOf(HmisSchema.Column.NAME_DATA_QUALITY);
+        int ssnColumn = columns.indexOf(HmisSchema.Column.SSN);
+        int ssnDataQualityColumn = columns.indexOf(HmisSchema.Column.SSN_DATA_QUALITY);
+        int dobColumn = columns.indexOf(HmisSchema.Column.DOB);
+        int dobDataQualityColumn = columns.indexOf(HmisSchema.Column.DOB_DATA_QUALITY);
+        int raceNoneColumn = columns.indexOf(HmisSchema.Column.RACE_NONE);
+        sc.setLastField(columns.getLastIndex());
+
+        //data quality codes, one String per distinct value
+        FieldPool codes = new FieldPool();
 
         System.out.println("READING ENTRIES ...");
 
@@ -167,52 +185,49 @@ public class DataAnalysis {
         StringBuilder twinsOutput = new StringBuilder(Client.CLIENT_HEADER);
 
         //for each entry
-        while (sc.hasNextLine() && !(DEBUG && scanCount >= 1_000)) {
+        while (!(DEBUG && scanCount >= 1_000) && sc.next()) {
 
-            String line = sc.nextLine();
-            String[] array = line.split(",");
-
-            if (array.length == 0) {
-                break;
+            if (!REJECTS.isComplete("Client.csv", sc, columns, personalIdColumn)) {
+                continue;
             }
 
-            String dobS = array[8];
+            String dobS = sc.getString(dobColumn);
 
             //if a client has the special
             if (!SPECIAL_DATE.equals(dobS)) {
 
-                String personalId = array[0];
+                String personalId = sc.getString(personalIdColumn);
 
-                String fName = array[1];
-                String lName = array[3];
-                String suffix = array[4];
-                String nameDataQuality = array[5];
+                String fName = sc.getString(fNameColumn);
+                String lName = sc.getString(lNameColumn);
+                String suffix = sc.getString(suffixColumn);
+                String nameDataQuality = codes.get(sc, nameDataQualityColumn);
 
-                String ssn = array[6];
-                String ssnDataQuality = array[7];
+                String ssn = sc.getString(ssnColumn);
+                String ssnDataQuality = codes.get(sc, ssnDataQualityColumn);
 
-                LocalDate dob;
-                try {
-                    dob = LocalDate.parse(dobS, DATE_FORMAT);
-                } catch (DateTimeParseException e) {
-                    dob = LocalDate.parse(dobS, NEW_DATE_FORMAT);
-                    dobS = dob.format(DATE_FORMAT);
+                int dobEpochDay = DATES.parse(sc, dobColumn);
+                if (dobEpochDay == HmisDateParser.INVALID) {
+                    REJECTS.reject("Client.csv", sc.getRecordOffset(), RejectLog.Reason.BAD_DOB, sc.getRecord());
+                    continue;
                 }
+                LocalDate dob = LocalDate.ofEpochDay(dobEpochDay);
+                //every DoB is compared as M/d/yyyy, whatever its format in the file
+                dobS = HmisDateParser.format(dobEpochDay);
 
-                String dobDataQuality = array[9];
+                String dobDataQuality = codes.get(sc, dobDataQualityColumn);
 
-                String race = array[10] + array[11] + array[12]
-                        + array[13] + array[14];
+                String race = columns.getRace(sc);
 
-                String raceDataQuality = array[15];
+                String raceDataQuality = codes.get(sc, raceNoneColumn);
 
-                String gender = array[17];
+                String gender = columns.getGender(sc);
 
                 Client client = new Client(
                         personalId, fName, lName, suffix, nameDataQuality,
                         ssn, ssnDataQuality,
                         dobS, dob, dobDataQuality, gender, race, raceDataQuality,
-                        line
+                        sc.getRecord()
                 );
 
                 //make comparisons between current client
@@ -232,6 +247,9 @@ public class DataAnalysis {
                 mapRace(client);
 
                 //add entry to list
+                TWINS.add(entries.size(), lName, dobEpochDay,
+                        FIRST_ENTRIES.getOrDefault(personalId, TwinIndex.NO_ENTRY));
+                rows.put(personalId, entries.size());
                 entries.add(client);
 
                 scanCount++;
@@ -252,20 +270,21 @@ public class DataAnalysis {
 
             int t1 = 0, t2 = 0;
 
-            for (int j = 0; j < entries.size(); j++) {
+            //twins can only be found among entries with the same last name and DoB
+            if (TWINS.isMinorAtFirstEntry(i)) {
+                int[] group = TWINS.getGroup(i);
                 Client entry = entries.get(i);
-                Client otherEntry = entries.get(j);
-                if (entry != otherEntry && isTwin1(entry, otherEntry)) {
-                    t1 = 1;
-                    break;
+                for (int j : group) {
+                    if (j != i && isTwin1(entry, entries.get(j))) {
+                        t1 = 1;
+                        break;
+                    }
                 }
-            }
-            for (int j = 0; j < entries.size(); j++) {
-                Client entry = entries.get(i);
-                Client otherEntry = entries.get(j);
-                if (entry != otherEntry && isTwin2(entry, otherEntry)) {
-                    t2 = 2;
-                    break;
+                for (int j : group) {
+                    if (j != i && isTwin2(entry, entries.get(j))) {
+                        t2 = 2;
+                        break;
+                    }
                 }
             }
 
@@ -302,7 +321,11 @@ public class DataAnalysis {
         System.out.println("Clients who had a twin (2): " + twinTests[2]);
         System.out.println("Clients who had a twin (1, 2): " + twinTests[3]);
 
+        System.out.println("");
+        REJECTS.printCounts();
+
         printToFile("./output/TwinOutput.csv", twinsOutput.toString());
+        REJECTS.close();
     }//end main
 
     //
@@ -409,79 +432,51 @@ public class DataAnalysis {
         //
         // COMPARE ALL PAIRS OF THIS CLIENT AND A PREVIOUS CLIENT
         //
-        try {
-            //compare data fields for entries with matching SSNs
-            for (Client otherEntry : ssnGroupMap.get(entry.getSsn())) {
-                if (hasSsnMatch(entry.getSsn(), otherEntry)) {
-                    compareFields(entry, otherEntry, 0);
-                }
+        //compare data fields for entries with matching SSNs
+        for (Client otherEntry : ssnGroupMap.getOrDefault(entry.getSsn(), NO_CLIENTS)) {
+            if (hasSsnMatch(entry.getSsn(), otherEntry)) {
+                compareFields(entry, otherEntry, 0);
             }
-        } catch (NullPointerException e) {
         }
 
-        try {
-            //compare data fields for entries with matching FirstNames
-            for (Client otherEntry : fNameGroupMap.get(entry.getfName())) {
-                compareFields(entry, otherEntry, 1);
-            }
-        } catch (NullPointerException e) {
+        //compare data fields for entries with matching FirstNames
+        for (Client otherEntry : fNameGroupMap.getOrDefault(entry.getfName(), NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 1);
         }
 
-        try {
-            //compare data fields for entries with matching LastNames
-            for (Client otherEntry : lNameGroupMap.get(entry.getlName())) {
-                compareFields(entry, otherEntry, 2);
-            }
-        } catch (NullPointerException e) {
+        //compare data fields for entries with matching LastNames
+        for (Client otherEntry : lNameGroupMap.getOrDefault(entry.getlName(), NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 2);
         }
 
-        try {
-            //compare data fields for entries with matching DoBs
-            for (Client otherEntry : dobGroupMap.get(entry.getDob())) {
-                compareFields(entry, otherEntry, 3);
-            }
-        } catch (NullPointerException e) {
+        //compare data fields for entries with matching DoBs
+        for (Client otherEntry : dobGroupMap.getOrDefault(entry.getDob(), NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 3);
         }
 
-        try {
-            //compare data fields for entries with matching days of birth
-            for (Client otherEntry : dayGroupMap.get(entry.getDob().getDayOfMonth() + "")) {
-                compareFields(entry, otherEntry, 4);
-            }
-        } catch (NullPointerException e) {
+        //compare data fields for entries with matching days of birth
+        for (Client otherEntry : dayGroupMap.getOrDefault(entry.getDob().getDayOfMonth() + "", NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 4);
         }
 
-        try {
-            //compare data fields for entries with matching months of birth
-            for (Client otherEntry : monthGroupMap.get(entry.getDob().getMonthValue() + "")) {
-                compareFields(entry, otherEntry, 5);
-            }
-        } catch (NullPointerException e) {
+        //compare data fields for entries with matching months of birth
+        for (Client otherEntry : monthGroupMap.getOrDefault(entry.getDob().getMonthValue() + "", NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 5);
         }
 
-        try {
-            //compare data fields for entries with matching years of birth
-            for (Client otherEntry : yearGroupMap.get(entry.getDob().getYear() + "")) {
-                compareFields(entry, otherEntry, 6);
-            }
-        } catch (NullPointerException e) {
-            //System.out.println("YEEEEEEEE");
+        //compare data fields for entries with matching years of birth
+        for (Client otherEntry : yearGroupMap.getOrDefault(entry.getDob().getYear() + "", NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 6);
         }
 
-        try {
-            //compare data fields for entries with matching gender
-            for (Client otherEntry : genderGroupMap.get(entry.getGender())) {
-                compareFields(entry, otherEntry, 7);
-            }
-        } catch (NullPointerException e) {
+        //compare data fields for entries with matching gender
+        for (Client otherEntry : genderGroupMap.getOrDefault(entry.getGender(), NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 7);
         }
 
-        try {
-            //compare data fields for entries with matching gender
-            for (Client otherEntry : raceGroupMap.get(entry.getRace())) {
-                compareFields(entry, otherEntry, 8);
-            }
-        } catch (NullPointerException e) {
+        //compare data fields for entries with matching gender
+        for (Client otherEntry : raceGroupMap.getOrDefault(entry.getRace(), NO_CLIENTS)) {
+            compareFields(entry, otherEntry, 8);
         }
 
         //compare data fields for all successive entries that pass test1 [9]
@@ -707,18 +702,13 @@ public class DataAnalysis {
 
     private static boolean isTwin1(Client newClient, Client client) {
 
-        String[] newClientInfo = new String[]{newClient.getfName(), newClient.getlName(), newClient.getDobS()};
-
-        if (newClientInfo[1].equals(client.getlName()) && newClient.getDob().equals(client.getDob())) {
-            LocalDate entryDate = ENTRY_DATES.get(newClient.getPersonalId());
-            // Age < 18
-            if (!newClient.getDob().isBefore(entryDate.minusYears(18))) {
-                String client2FName = client.getfName();
-                // Different first names
-                if (!newClientInfo[0].isEmpty() && !client2FName.isEmpty()
-                        && !newClientInfo[0].equals(client2FName)) {
-                    return true;
-                }
+        // Same birthdays and last names, age < 18 at first entry
+        if (TWINS.mayBeTwins(rows.get(newClient.getPersonalId()), rows.get(client.getPersonalId()))) {
+            String fName = newClient.getfName();
+            String client2FName = client.getfName();
+            // Different first names
+            if (!fName.isEmpty() && !client2FName.isEmpty() && !fName.equals(client2FName)) {
+                return true;
             }
         }
 
@@ -727,23 +717,17 @@ public class DataAnalysis {
 
     private static boolean isTwin2(Client newClient, Client client) {
 
-        String lName = newClient.getlName();
-        LocalDate dob = newClient.getDob();
         String ssn = newClient.getSsn();
-        String personalId = newClient.getPersonalId();
         String fName = newClient.getfName();
 
-        if (lName.equals(client.getlName()) && dob.equals(client.getDob())) {
+        // Same birthdays and last names, age < 18 at first entry
+        if (TWINS.mayBeTwins(rows.get(newClient.getPersonalId()), rows.get(client.getPersonalId()))) {
             // Different SSNs
             if (!ssn.equals(client.getSsn())) {
-                LocalDate entryDate = ENTRY_DATES.get(personalId);
-                // Age < 18
-                if (!dob.isBefore(entryDate.minusYears(18))) {
-                    String client2FName = client.getfName();
-                    // Different first names
-                    if (!fName.isEmpty() && !client2FName.isEmpty() && !fName.equals(client2FName)) {
-                        return true;
-                    }
+                String client2FName = client.getfName();
+                // Different first names
+                if (!fName.isEmpty() && !client2FName.isEmpty() && !fName.equals(client2FName)) {
+                    return true;
                 }
             }
         }
@@ -806,45 +790,39 @@ public class DataAnalysis {
     /**
      * Get entry dates for everyone mapping PID to the date of entry
      */
-    private static void getEntriesDates() {
+    private static void getEntriesDates() throws IOException {
         //HashMap<String, LocalDate> map = new HashMap<>();
 
         boolean flag = true;
 
-        Scanner sc = null;
-        try {
-            sc = new Scanner(new File(INPUT_PATH + "Enrollment.csv"), "UTF-8");
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(Algorithm1.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        sc = sc.useDelimiter("[,\n]");
-        sc.nextLine();
+        HmisCsvReader sc = new HmisCsvReader(new File(INPUT_PATH + "Enrollment.csv"));
 
-        int count = 0;
+        HmisSchema columns = new HmisSchema(sc, "Enrollment.csv");
+        int enrollmentIdColumn = columns.indexOf(HmisSchema.Column.ENROLLMENT_ID);
+        int personalIdColumn = columns.indexOf(HmisSchema.Column.PERSONAL_ID);
+        int entryDateColumn = columns.indexOf(HmisSchema.Column.ENTRY_DATE);
+        sc.setLastField(columns.getLastIndex());
 
-        while (sc.hasNextLine()) {
+        int count = 0;
 
-            String line = sc.nextLine();
-            String[] array = line.split(",");
+        while (sc.next()) {
 
-            if (array.length == 0) {
-                break;
+            if (!REJECTS.isComplete("Enrollment.csv", sc, columns, personalIdColumn)) {
+                continue;
             }
 
-            String projectEntry = array[0];
-
-            String personalId = array[1];
+            String projectEntry = sc.getString(enrollmentIdColumn);
 
-            String entryDateS = array[3];
+            String personalId = sc.getString(personalIdColumn);
 
-            LocalDate entryDate;
-            try {
-                entryDate = LocalDate.parse(entryDateS, DATE_FORMAT);
-            } catch (DateTimeParseException e) {
-                entryDate = LocalDate.parse(entryDateS, NEW_DATE_FORMAT);
+            int entryDate = DATES.parse(sc, entryDateColumn);
+            if (entryDate == HmisDateParser.INVALID) {
+                REJECTS.reject("Enrollment.csv", sc.getRecordOffset(), RejectLog.Reason.BAD_ENTRY_DATE, sc.getRecord());
+                continue;
             }
 
-            ENTRY_DATES.put(personalId, entryDate);
+            //the first entry decides the age for the twin checks
+            FIRST_ENTRIES.putIfAbsent(personalId, entryDate);
 
         }
 
@@ -0,0 +1,98 @@
+package research;
+
+import java.util.Arrays;
+
+/**
+ * Union-find over client ordinals, used to resolve duplicate groups
+ *
+ * Every client starts in its own set; a match between two clients merges
+ * their sets. Uses path compression and union by rank, so finding the root
+ * of a client takes near-constant time.
+ *
+ * @author Keith Grable
+ * @version 2018-03-22
+ */
+public class DisjointSet {
+
+    /**
+     * parent[i] is the ordinal of the parent of client i, or i for a root
+     */
+    private int[] parent = new int[1024];
+
+    /**
+     * upper bound on the height of the tree under each root
+     */
+    private byte[] rank = new byte[1024];
+
+    private int size = 0;
+
+    /**
+     * Adds a client in a set of its own
+     *
+     * @return the ordinal of the new client
+     */
+    public int makeSet() {
+        if (size == parent.length) {
+            parent = Arrays.copyOf(parent, 2 * size);
+            rank = Arrays.copyOf(rank, 2 * size);
+        }
+        parent[size] = size;
+        return size++;
+    }
+
+    /**
+     * Finds the root of the set containing the given client, pointing every
+     * client on the way directly at the root
+     *
+     * @throws IllegalArgumentException if the client has no set yet
+     */
+    public int find(int ordinal) {
+        if (ordinal >= size) {
+            //parent[ordinal] would be 0, merging the client into client 0
+            throw new IllegalArgumentException("No set for client " + ordinal);
+        }
+        int root = ordinal;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+
+        while (parent[ordinal] != root) {
+            int next = parent[ordinal];
+            parent[ordinal] = root;
+            ordinal = next;
+        }
+
+        return root;
+    }
+
+    /**
+     * Merges the sets containing the two clients
+     *
+     * @return true if the clients were in different sets
+     * @throws IllegalArgumentException if either client has no set yet
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a), rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+
+        if (rank[rootA] < rank[rootB]) {
+            parent[rootA] = rootB;
+        } else if (rank[rootA] > rank[rootB]) {
+            parent[rootB] = rootA;
+        } else {
+            parent[rootB] = rootA;
+            rank[rootA]++;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of clients
+     */
+    public int size() {
+        return size;
+    }
+}
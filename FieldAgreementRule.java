@@ -0,0 +1,61 @@
+package research;
+
+/**
+ * The first two sets of criteria of test 2
+ *
+ * A pair has potential if the SSNs are full and match (step A), or if at
+ * least two of first name, last name and DoB are equal (step B). Unless both
+ * steps succeed, which is a HARD MATCH, the pair is rejected if at least two
+ * of gender, suffix and the parts of the DoB are distinct.
+ *
+ * @author Keith Grable
+ * @version 2018-03-28
+ */
+public class FieldAgreementRule implements MatchRule {
+
+    private static final int MATCHING_FIELDS = Client.FNAME | Client.LNAME | Client.DOB;
+
+    private static final int DISTINCT_FIELDS
+            = Client.GENDER | Client.SUFFIX | Client.DAY | Client.MONTH | Client.YEAR;
+
+    @Override
+    public String getName() {
+        return "field agreement";
+    }
+
+    @Override
+    public boolean rejects(ClientPair pair) {
+        ClientTable table = pair.getTable();
+        int newClient = pair.getNewClient(), client = pair.getClient();
+
+        //ssn equality test
+        //stepA is true if ssns are complete and matching
+        boolean stepA = SsnMatchRule.hasSsnMatch(table, newClient, client)
+                && table.isFullSsn(newClient) && table.isFullSsn(client);
+
+        //reject from the signatures if stepB and the distinctions can be
+        //decided without comparing fields one at a time
+        long newSignature = table.getSignature(newClient), signature = table.getSignature(client);
+        boolean maybeStepB = FieldSignature.countOfPossiblyEqual(newSignature, signature, MATCHING_FIELDS) >= 2;
+        if (!(stepA || maybeStepB)) {
+            return true;
+        }
+        if (!(stepA && maybeStepB)
+                && FieldSignature.countOfCertainlyInequal(newSignature, signature, DISTINCT_FIELDS) >= 2) {
+            return true;
+        }
+
+        // How equal are they? Has potential if at least two fields match
+        boolean stepB = FieldCountRule.countOfEqual(table, newClient, client, MATCHING_FIELDS) >= 2;
+
+        //if first set fails to find a match
+        if (!(stepA || stepB)) {
+            return true;
+        }
+
+        //success for stepA AND stepB indicates a HARD MATCH
+        //only look for distinctions if we dont have a HARD MATCH
+        return !(stepA && stepB)
+                && FieldCountRule.countOfInequal(table, newClient, client, DISTINCT_FIELDS) >= 2;
+    }
+}
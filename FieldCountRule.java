@@ -0,0 +1,63 @@
+package research;
+
+/**
+ * Rejects a pair unless enough of the given fields are equal
+ *
+ * Used by test 1
+ *
+ * @author Keith Grable
+ * @version 2018-03-28
+ */
+public class FieldCountRule implements MatchRule {
+
+    private final int fields;
+    private final int minimum;
+
+    /**
+     * @param fields the fields to compare, as Client.FNAME, Client.LNAME, ...
+     * bits
+     * @param minimum how many of the fields must be equal
+     */
+    public FieldCountRule(int fields, int minimum) {
+        this.fields = fields;
+        this.minimum = minimum;
+    }
+
+    @Override
+    public String getName() {
+        return "field count";
+    }
+
+    @Override
+    public boolean rejects(ClientPair pair) {
+        ClientTable table = pair.getTable();
+        int newClient = pair.getNewClient(), client = pair.getClient();
+
+        //most pairs are rejected by their signatures alone
+        if (FieldSignature.countOfPossiblyEqual(table.getSignature(newClient),
+                table.getSignature(client), fields) < minimum) {
+            return true;
+        }
+        return countOfEqual(table, newClient, client, fields) < minimum;
+    }
+
+    /**
+     * Count how many of the given fields are equal, ignoring fields that are
+     * blank for newClient
+     */
+    public static int countOfEqual(ClientTable table, int newClient, int client, int fields) {
+        int equal = table.equalFields(newClient, client, fields);
+        return Integer.bitCount(equal & ~table.getBlankFields(newClient));
+    }
+
+    /**
+     * Count how many of the given fields are not equal
+     *
+     * If one field is blank, then there are no conflicts
+     */
+    public static int countOfInequal(ClientTable table, int newClient, int client, int fields) {
+        int equal = table.equalFields(newClient, client, fields);
+        int blank = table.getBlankFields(newClient) | table.getBlankFields(client);
+        return Integer.bitCount(fields & ~equal & ~blank);
+    }
+}
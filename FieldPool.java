@@ -0,0 +1,100 @@
+package research;
+
+/**
+ * Canonical Strings for the values of low-cardinality columns, such as data
+ * quality codes, gender and race
+ *
+ * A value of up to 8 bytes is looked up by its bytes in the file, so the same
+ * value gives the same String on every row and no String is made once it has
+ * been seen. Longer values, and new values once the pool is full, are read as
+ * new Strings. A pool is not thread safe; use one per reader.
+ *
+ * @author Keith Grable
+ * @version 2018-04-08
+ */
+public class FieldPool {
+
+    private static final int MAX_BYTES = 8;
+
+    private static final int MAX_VALUES = 64;
+
+    /**
+     * the bytes of each value, 8 bits each with the first byte highest, and
+     * their count
+     */
+    private final long[] keys = new long[MAX_VALUES];
+    private final byte[] lengths = new byte[MAX_VALUES];
+    private final String[] values = new String[MAX_VALUES];
+    private int size = 0;
+
+    /**
+     * @return a field of the current record, as HmisCsvReader.getString
+     */
+    public String get(HmisCsvReader reader, int field) {
+        int length = reader.getFieldLength(field);
+        if (length > MAX_BYTES) {
+            return reader.getString(field);
+        }
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            key = key << 8 | (reader.byteAt(field, i) & 0xFF);
+        }
+
+        int slot = find(key, length);
+        if (slot >= 0) {
+            return values[slot];
+        }
+        return add(key, length, reader.getString(field));
+    }
+
+    /**
+     * @return the given fields of the current record, one after another
+     */
+    public String get(HmisCsvReader reader, int[] fields) {
+        int length = 0;
+        long key = 0;
+        for (int field : fields) {
+            int fieldLength = reader.getFieldLength(field);
+            length += fieldLength;
+            if (length > MAX_BYTES) {
+                return concat(reader, fields);
+            }
+            for (int i = 0; i < fieldLength; i++) {
+                key = key << 8 | (reader.byteAt(field, i) & 0xFF);
+            }
+        }
+
+        int slot = find(key, length);
+        if (slot >= 0) {
+            return values[slot];
+        }
+        return add(key, length, concat(reader, fields));
+    }
+
+    private int find(long key, int length) {
+        for (int slot = 0; slot < size; slot++) {
+            if (keys[slot] == key && lengths[slot] == length) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private String add(long key, int length, String value) {
+        if (size < MAX_VALUES) {
+            keys[size] = key;
+            lengths[size] = (byte) length;
+            values[size] = value;
+            size++;
+        }
+        return value;
+    }
+
+    private static String concat(HmisCsvReader reader, int[] fields) {
+        StringBuilder value = new StringBuilder(fields.length);
+        for (int field : fields) {
+            value.append(reader.getString(field));
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package research;
+
+/**
+ * Packs one byte per compared field into a long, so that a pair of clients
+ * can be checked for equal fields with a few XOR, mask and popcount
+ * operations
+ *
+ * Byte i holds a small hash of the field with bit i in Client.FNAME, LNAME,
+ * SUFFIX, GENDER, DOB, DAY, MONTH, YEAR. A blank field is 0 and any other
+ * value is 1 to 255, so different bytes mean the fields are certainly
+ * different, while equal bytes only mean they may be equal.
+ *
+ * The day, month and year bytes are not hashes but the values themselves,
+ * the year as an offset from YEAR_BASE, so ClientTable reads them from the
+ * signature instead of keeping columns of its own. A year outside the range
+ * of a byte is OTHER_YEAR, and two such years are compared from the DoB.
+ *
+ * @author Keith Grable
+ * @version 2018-03-30
+ */
+public class FieldSignature {
+
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * the year byte of YEAR_BASE + 1 is 1, and of YEAR_BASE + 254 is 254;
+     * any other year is OTHER_YEAR
+     */
+    private static final int YEAR_BASE = 1850;
+    public static final int OTHER_YEAR = 255;
+
+    /**
+     * for each set of field bits, the high bit of the byte of each field
+     */
+    private static final long[] FIELD_BYTES = new long[256];
+
+    static {
+        for (int fields = 0; fields < 256; fields++) {
+            for (int i = 0; i < 8; i++) {
+                if ((fields & 1 << i) != 0) {
+                    FIELD_BYTES[fields] |= 0x80L << 8 * i;
+                }
+            }
+        }
+    }
+
+    private FieldSignature() {
+    }
+
+    /**
+     * Builds the signature of a client
+     *
+     * @param fName dictionary code of the first name, 0 if blank
+     * @param lName dictionary code of the last name, 0 if blank
+     * @param suffix dictionary code of the suffix, 0 if blank
+     * @param gender dictionary code of the gender, 0 if blank
+     */
+    public static long pack(int fName, int lName, int suffix, int gender,
+            int dobEpochDay, int day, int month, int year) {
+        int yearByte = year > YEAR_BASE && year < YEAR_BASE + OTHER_YEAR ? year - YEAR_BASE : OTHER_YEAR;
+        return hash(fName)
+                | hash(lName) << 8
+                | hash(suffix) << 16
+                | hash(gender) << 24
+                | (hash(dobEpochDay) | 1) << 32     //DoB fields are never blank
+                | (long) day << 40
+                | (long) month << 48
+                | (long) yearByte << 56;
+    }
+
+    /**
+     * @return the day of the month of the DoB of a signature
+     */
+    public static int getDay(long signature) {
+        return (int) (signature >>> 40) & 0xFF;
+    }
+
+    /**
+     * @return the month of the DoB of a signature
+     */
+    public static int getMonth(long signature) {
+        return (int) (signature >>> 48) & 0xFF;
+    }
+
+    /**
+     * @return the year of the DoB of a signature, less YEAR_BASE, or
+     * OTHER_YEAR
+     */
+    public static int getYearByte(long signature) {
+        return (int) (signature >>> 56);
+    }
+
+    /**
+     * @return 0 for 0, otherwise a byte from 1 to 255
+     */
+    private static long hash(int value) {
+        if (value == 0) {
+            return 0;
+        }
+        long h = (value * 0x9E3779B97F4A7C15L) >>> 56;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Counts the given fields that may be equal and are not blank for the new
+     * client; an upper bound on FieldCountRule.countOfEqual
+     */
+    public static int countOfPossiblyEqual(long newClient, long client, int fields) {
+        return Long.bitCount(zeroBytes(newClient ^ client) & ~zeroBytes(newClient) & FIELD_BYTES[fields]);
+    }
+
+    /**
+     * Counts the given fields that are certainly different and not blank for
+     * either client; a lower bound on FieldCountRule.countOfInequal
+     */
+    public static int countOfCertainlyInequal(long newClient, long client, int fields) {
+        return Long.bitCount(~zeroBytes(newClient ^ client) & ~zeroBytes(newClient)
+                & ~zeroBytes(client) & FIELD_BYTES[fields]);
+    }
+
+    /**
+     * @return the high bit set in every byte that is 0, and no other bits
+     */
+    private static long zeroBytes(long x) {
+        long y = (x & LOW_BITS) + LOW_BITS;
+        return ~(y | x | LOW_BITS) & HIGH_BITS;
+    }
+}
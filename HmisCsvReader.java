@@ -0,0 +1,454 @@
+package research;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the records of an HMIS CSV export, such as Client.csv, straight from
+ * a memory-mapped file
+ *
+ * Fields follow RFC 4180: they are separated by commas, records end with \n
+ * or \r\n, and a field in double quotes may contain commas, line breaks and
+ * doubled quotes. Each field of the current record is kept as a slice of the
+ * file, so only the fields that are asked for become Strings. A UTF-8 byte
+ * order mark at the start of the file is skipped.
+ *
+ * The file is mapped a window at a time, so files larger than 2 GB can be
+ * read; a record must fit in one window. A reader can also stream a file, such
+ * as an entry of a zip archive, through a smaller window on the heap.
+ *
+ * @author Keith Grable
+ * @version 2018-04-02
+ */
+public class HmisCsvReader implements Closeable {
+
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    private static final int STREAM_WINDOW_SIZE = 1 << 22;
+
+    private static final byte QUOTE = '"', COMMA = ',', CR = '\r', LF = '\n';
+
+    /**
+     * the mapped file, or null if the file is streamed
+     */
+    private final FileChannel channel;
+
+    /**
+     * the streamed file, or null if the file is mapped
+     */
+    private final InputStream stream;
+
+    private final long fileSize;
+
+    private final int windowSize;
+
+    private ByteBuffer window;
+
+    /**
+     * offset in the file of window position 0
+     */
+    private long windowOffset = 0;
+
+    /**
+     * offset in the file of the next record
+     */
+    private long nextOffset = 0;
+
+    private long recordOffset = -1;
+
+    /**
+     * start and length of the current record, without its line ending, in
+     * window positions
+     */
+    private int recordStart, recordLength;
+
+    private int fieldCount = 0;
+
+    /**
+     * the last field to split; the rest of each record is skipped
+     */
+    private int lastField = Integer.MAX_VALUE;
+
+    /**
+     * start and length of each field of the record, in window positions
+     */
+    private int[] starts = new int[32];
+    private int[] lengths = new int[32];
+
+    /**
+     * if the field was quoted and contains doubled quotes
+     */
+    private boolean[] escaped = new boolean[32];
+
+    private byte[] scratch = new byte[256];
+
+    public HmisCsvReader(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize how many bytes of the file to map at once
+     */
+    HmisCsvReader(File file, int windowSize) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        stream = null;
+        fileSize = channel.size();
+        this.windowSize = windowSize;
+        start();
+    }
+
+    /**
+     * Reads a file from a stream, which is closed with the reader
+     *
+     * @param size the length of the file in bytes, as given by a zip entry
+     */
+    public HmisCsvReader(InputStream stream, long size) {
+        this(stream, size, STREAM_WINDOW_SIZE);
+    }
+
+    HmisCsvReader(InputStream stream, long size, int windowSize) {
+        channel = null;
+        this.stream = stream;
+        fileSize = size;
+        this.windowSize = windowSize;
+        start();
+    }
+
+    private void start() {
+        map(0);
+
+        //skip a byte order mark
+        if (fileSize >= 3 && (window.get(0) & 0xFF) == 0xEF
+                && (window.get(1) & 0xFF) == 0xBB && (window.get(2) & 0xFF) == 0xBF) {
+            nextOffset = 3;
+        }
+    }
+
+    private void map(long offset) {
+        try {
+            if (stream != null) {
+                fill(offset);
+                return;
+            }
+            windowOffset = offset;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(windowSize, fileSize - offset));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves the window of a streamed file forward to the given offset,
+     * keeping the bytes after it and reading more from the stream
+     */
+    private void fill(long offset) throws IOException {
+        if (window == null) {
+            window = ByteBuffer.allocate((int) Math.min(windowSize, Math.max(fileSize, 1)));
+        } else {
+            window.position((int) (offset - windowOffset));
+            window.compact();
+        }
+        windowOffset = offset;
+
+        byte[] bytes = window.array();
+        int length = window.position();
+        int wanted = (int) Math.min(bytes.length, fileSize - offset);
+        while (length < wanted) {
+            int read = stream.read(bytes, length, wanted - length);
+            if (read < 0) {
+                throw new EOFException("Stream ends at byte " + (offset + length)
+                        + " of " + fileSize);
+            }
+            length += read;
+        }
+        window.position(0);
+        window.limit(length);
+    }
+
+    /**
+     * Moves on to the next record
+     *
+     * @return false at the end of the file
+     */
+    public boolean next() {
+        if (nextOffset >= fileSize) {
+            fieldCount = 0;
+            return false;
+        }
+        if (nextOffset - windowOffset >= window.limit()) {
+            map(nextOffset);
+        }
+
+        int end = parse((int) (nextOffset - windowOffset));
+        if (end < 0) {
+            //the record runs past the window, so map a window starting at it
+            map(nextOffset);
+            end = parse(0);
+            if (end < 0) {
+                throw new IllegalStateException("Record at byte " + nextOffset
+                        + " is longer than " + windowSize + " bytes");
+            }
+        }
+
+        recordOffset = nextOffset;
+        nextOffset = windowOffset + end;
+        return true;
+    }
+
+    /**
+     * Splits the record starting at the given window position into fields
+     *
+     * @return the window position after the record, or -1 if the record does
+     * not end within the window and the file goes on
+     */
+    private int parse(int position) {
+        int limit = window.limit();
+        boolean lastWindow = windowOffset + limit == fileSize;
+        fieldCount = 0;
+        recordStart = position;
+
+        while (true) {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * fieldCount);
+                lengths = Arrays.copyOf(lengths, 2 * fieldCount);
+                escaped = Arrays.copyOf(escaped, 2 * fieldCount);
+            }
+            int field = fieldCount++;
+            boolean quoted = position < limit && window.get(position) == QUOTE;
+            boolean hasEscapes = false;
+            int start, fieldEnd;
+
+            if (quoted) {
+                start = ++position;
+                while (true) {
+                    if (position >= limit) {
+                        if (!lastWindow) {
+                            return -1;
+                        }
+                        break;      //unterminated quote runs to the end of the file
+                    }
+                    if (window.get(position) == QUOTE) {
+                        if (position + 1 < limit && window.get(position + 1) == QUOTE) {
+                            hasEscapes = true;
+                            position += 2;
+                            continue;
+                        }
+                        if (position + 1 >= limit && !lastWindow) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+                fieldEnd = position;
+                //skip the closing quote and anything up to the delimiter
+                while (position < limit && window.get(position) != COMMA && window.get(position) != LF) {
+                    position++;
+                }
+            } else {
+                start = position;
+                while (position < limit && window.get(position) != COMMA && window.get(position) != LF) {
+                    position++;
+                }
+                fieldEnd = position;
+            }
+
+            if (position >= limit && !lastWindow) {
+                return -1;
+            }
+
+            if (position >= limit || window.get(position) == LF) {
+                //the last field of the record; the \r of a \r\n is not part of it
+                if (!quoted && fieldEnd > start && window.get(fieldEnd - 1) == CR) {
+                    fieldEnd--;
+                }
+                starts[field] = start;
+                lengths[field] = fieldEnd - start;
+                escaped[field] = hasEscapes;
+                return endRecord(position);
+            }
+
+            starts[field] = start;
+            lengths[field] = fieldEnd - start;
+            escaped[field] = hasEscapes;
+            position++;     //skip the comma
+
+            if (field == lastField) {
+                return skipRecord(position, limit, lastWindow);
+            }
+        }
+    }
+
+    /**
+     * Skips the fields after lastField, minding quotes as parse does: only a
+     * quote at the start of a field starts a quoted field, which runs past
+     * doubled quotes to its closing quote, and a quote inside an unquoted
+     * field is part of its value
+     *
+     * @return the window position after the record, or -1 as for parse
+     */
+    private int skipRecord(int position, int limit, boolean lastWindow) {
+        while (position < limit) {
+            if (window.get(position) == QUOTE) {
+                position++;
+                while (position < limit) {
+                    if (window.get(position) == QUOTE) {
+                        if (position + 1 < limit && window.get(position + 1) == QUOTE) {
+                            position += 2;
+                            continue;
+                        }
+                        if (position + 1 >= limit && !lastWindow) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+            }
+            while (position < limit && window.get(position) != COMMA && window.get(position) != LF) {
+                position++;
+            }
+            if (position >= limit || window.get(position) == LF) {
+                break;
+            }
+            position++;     //skip the comma
+        }
+        if (position >= limit && !lastWindow) {
+            return -1;
+        }
+        return endRecord(position);
+    }
+
+    /**
+     * @param position the position of the \n ending the record, or the limit
+     * of the last window
+     * @return the window position after the record
+     */
+    private int endRecord(int position) {
+        recordLength = position - recordStart;
+        if (recordLength > 0 && window.get(position - 1) == CR) {
+            recordLength--;
+        }
+        return position < window.limit() ? position + 1 : position;
+    }
+
+    /**
+     * Splits only the fields up to the given one; the rest of each record is
+     * skipped without being split
+     *
+     * @param lastField the index of the last field that will be read
+     */
+    public void setLastField(int lastField) {
+        this.lastField = lastField;
+    }
+
+    /**
+     * @return the byte offset in the file of the current record
+     */
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * @return the current record as it is in the file, without its line
+     * ending
+     */
+    public String getRecord() {
+        return decode(recordStart, recordLength, false);
+    }
+
+    /**
+     * @return the number of fields in the current record
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the byte offset in the file of a field, after any opening quote
+     */
+    public long getFieldOffset(int field) {
+        return windowOffset + starts[field];
+    }
+
+    /**
+     * @return the length in bytes of a field, without its quotes; a doubled
+     * quote counts as two bytes
+     */
+    public int getFieldLength(int field) {
+        return field < fieldCount ? lengths[field] : 0;
+    }
+
+    /**
+     * @return a byte of a field, without its quotes
+     */
+    public byte byteAt(int field, int index) {
+        return window.get(starts[field] + index);
+    }
+
+    /**
+     * If a field is empty or missing from the record
+     */
+    public boolean isEmpty(int field) {
+        return getFieldLength(field) == 0;
+    }
+
+    /**
+     * If every field of the record is empty, as on a blank line
+     */
+    public boolean isBlank() {
+        for (int field = 0; field < fieldCount; field++) {
+            if (lengths[field] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a field as a String, without its quotes and with doubled
+     * quotes made single; "" if the record has no such field
+     */
+    public String getString(int field) {
+        int length = getFieldLength(field);
+        return length == 0 ? "" : decode(starts[field], length, escaped[field]);
+    }
+
+    /**
+     * @param escapes if doubled quotes are made single
+     */
+    private String decode(int start, int length, boolean escapes) {
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, 2 * scratch.length)];
+        }
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = window.get(start + i);
+            scratch[size++] = b;
+            if (b == QUOTE && escapes) {
+                i++;        //skip the second quote of the pair
+            }
+        }
+        return new String(scratch, 0, size, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        if (channel != null) {
+            channel.close();
+        } else {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package research;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Parses the dates of an HMIS export into epoch days, without exceptions
+ *
+ * The format is told apart by its separator: M/d/yyyy, yyyy-M-d, and either
+ * one followed by a time, as in ISO timestamps (yyyy-MM-ddTHH:mm:ss) or
+ * spreadsheet exports (M/d/yyyy H:mm). Months and days may have one or two
+ * digits. Anything else, including dates that do not exist, is INVALID.
+ *
+ * DoBs and entry dates repeat a lot, so recently parsed dates are kept in a
+ * small cache. A parser is not thread safe; use one per thread.
+ *
+ * @author Keith Grable
+ * @version 2018-04-03
+ */
+public class HmisDateParser {
+
+    /**
+     * the result for a string that is not a date
+     */
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    private static final int CACHE_SIZE = 1 << 12;
+
+    private static final byte SLASH = 10, DASH = 11;
+
+    /**
+     * the date bytes, 4 bits each, and their count, of each cached date
+     */
+    private final long[] cacheKeys = new long[CACHE_SIZE];
+    private final int[] cacheValues = new int[CACHE_SIZE];
+
+    private final byte[] scratch = new byte[32];
+
+    public HmisDateParser() {
+        Arrays.fill(cacheKeys, -1);
+    }
+
+    /**
+     * @return the epoch day of a date, or INVALID
+     */
+    public int parse(String s) {
+        int length = s.length();
+        if (length > scratch.length) {
+            return INVALID;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            scratch[i] = c < 0x80 ? (byte) c : 0;
+        }
+        return parse(scratch, length);
+    }
+
+    /**
+     * @return the epoch day of a field of the current record, or INVALID
+     */
+    public int parse(HmisCsvReader reader, int field) {
+        int length = reader.getFieldLength(field);
+        if (length > scratch.length) {
+            return INVALID;
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = reader.byteAt(field, i);
+        }
+        return parse(scratch, length);
+    }
+
+    private int parse(byte[] bytes, int length) {
+        int start = 0, end = length;
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+
+        //the date ends at the time, if there is one
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == ' ' || bytes[i] == 'T') {
+                end = i;
+                break;
+            }
+        }
+        if (end - start > 10 || end == start) {
+            return INVALID;
+        }
+
+        //pack the date into a cache key, 4 bits per byte
+        long key = end - start;
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            int nibble;
+            if (b >= '0' && b <= '9') {
+                nibble = b - '0';
+            } else if (b == '/') {
+                nibble = SLASH;
+            } else if (b == '-') {
+                nibble = DASH;
+            } else {
+                return INVALID;
+            }
+            key = key << 4 | nibble;
+        }
+
+        int slot = (int) (key ^ key >>> 21 ^ key >>> 37) & (CACHE_SIZE - 1);
+        if (cacheKeys[slot] == key) {
+            return cacheValues[slot];
+        }
+
+        int epochDay = parseDate(key, end - start);
+        cacheKeys[slot] = key;
+        cacheValues[slot] = epochDay;
+        return epochDay;
+    }
+
+    /**
+     * Parses a date packed 4 bits per byte, with the first byte highest
+     */
+    private static int parseDate(long key, int length) {
+        int first = 0, second = 0, number = 0;
+        int firstDigits = 0, secondDigits = 0, digits = 0;
+        int separator = -1, separators = 0;
+
+        for (int i = length - 1; i >= 0; i--) {
+            int nibble = (int) (key >>> 4 * i) & 0xF;
+            if (nibble <= 9) {
+                number = 10 * number + nibble;
+                digits++;
+            } else {
+                if (separator == -1) {
+                    separator = nibble;
+                } else if (nibble != separator) {
+                    return INVALID;
+                }
+                if (++separators == 1) {
+                    first = number;
+                    firstDigits = digits;
+                } else if (separators == 2) {
+                    second = number;
+                    secondDigits = digits;
+                } else {
+                    return INVALID;
+                }
+                number = 0;
+                digits = 0;
+            }
+        }
+        if (separators != 2) {
+            return INVALID;
+        }
+
+        int year, month, day;
+        if (separator == SLASH) {
+            if (firstDigits == 0 || firstDigits > 2 || secondDigits == 0 || secondDigits > 2 || digits != 4) {
+                return INVALID;
+            }
+            month = first;
+            day = second;
+            year = number;
+        } else {
+            if (firstDigits != 4 || secondDigits == 0 || secondDigits > 2 || digits == 0 || digits > 2) {
+                return INVALID;
+            }
+            year = first;
+            month = second;
+            day = number;
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        return epochDay(year, month, day);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return the days since 1970-01-01 of a valid date
+     */
+    static int epochDay(int year, int month, int day) {
+        //count years from March, so the leap day is the last day of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - 400 * era;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = 365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return 146097 * era + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the date as M/d/yyyy
+     */
+    public static String format(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        String year = Integer.toString(date.getYear());
+        return date.getMonthValue() + "/" + date.getDayOfMonth() + "/"
+                + "0000".substring(Math.min(year.length(), 4)) + year;
+    }
+}
@@ -0,0 +1,148 @@
+package research;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The CSV files of one HMIS export, either in a directory or in a zip archive
+ *
+ * Files in a zip are decompressed as they are read, so the export never has
+ * to be extracted. Files are found by name, wherever they are in the zip.
+ *
+ * @author Keith Grable
+ * @version 2018-04-07
+ */
+public class HmisExport implements Closeable {
+
+    private final File path;
+
+    /**
+     * the archive, or null for a directory
+     */
+    private final ZipFile zip;
+
+    /**
+     * the CSV entries of the archive by file name, in archive order
+     */
+    private final LinkedHashMap<String, ZipEntry> entries = new LinkedHashMap<>();
+
+    /**
+     * @param path a directory of CSV files, or a .zip file of them
+     */
+    public HmisExport(File path) throws IOException {
+        this.path = path;
+        if (path.isDirectory()) {
+            zip = null;
+            return;
+        }
+        if (!path.isFile()) {
+            throw new FileNotFoundException(path + " is not a directory or zip file");
+        }
+
+        zip = new ZipFile(path);
+        Enumeration<? extends ZipEntry> all = zip.entries();
+        while (all.hasMoreElements()) {
+            ZipEntry entry = all.nextElement();
+            String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+            if (!entry.isDirectory() && name.endsWith(".csv")) {
+                entries.putIfAbsent(name, entry);
+            }
+        }
+    }
+
+    /**
+     * @return the directory or zip file
+     */
+    public File getPath() {
+        return path;
+    }
+
+    /**
+     * @return the names of the CSV files of the export
+     */
+    public List<String> getCsvNames() {
+        if (zip != null) {
+            return new ArrayList<>(entries.keySet());
+        }
+        List<String> names = new ArrayList<>();
+        File[] files = path.listFiles();
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(".csv")) {
+                names.add(file.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the files a snapshot of the named CSVs depends on: the CSVs
+     * themselves, or the zip file
+     */
+    public File[] getSources(String... names) {
+        if (zip != null) {
+            return new File[]{path};
+        }
+        File[] files = new File[names.length];
+        for (int i = 0; i < names.length; i++) {
+            files[i] = new File(path, names[i]);
+        }
+        return files;
+    }
+
+    /**
+     * @return a CSV file of a directory, or null if the export is a zip
+     */
+    public File getFile(String name) {
+        return zip == null ? new File(path, name) : null;
+    }
+
+    /**
+     * @return a reader of a CSV file; mapped from a directory, streamed from
+     * a zip
+     */
+    public HmisCsvReader openReader(String name) throws IOException {
+        if (zip == null) {
+            return new HmisCsvReader(new File(path, name));
+        }
+        ZipEntry entry = getEntry(name);
+        if (entry.getSize() < 0) {
+            throw new IOException(name + " in " + path + " has no size");
+        }
+        return new HmisCsvReader(zip.getInputStream(entry), entry.getSize());
+    }
+
+    /**
+     * @return the bytes of a CSV file
+     */
+    public InputStream openStream(String name) throws IOException {
+        if (zip == null) {
+            return new FileInputStream(new File(path, name));
+        }
+        return zip.getInputStream(getEntry(name));
+    }
+
+    private ZipEntry getEntry(String name) throws FileNotFoundException {
+        ZipEntry entry = entries.get(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name + " is not in " + path);
+        }
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zip != null) {
+            zip.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package research;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * The columns of one HMIS CSV file, found by header name rather than by
+ * position
+ *
+ * Columns are looked up once, when the header is read, in any case, as some
+ * exports write PersonalId for PersonalID. Each column lists the names it has
+ * had in the HMIS CSV specs from FY2018 on, so the same loader reads every
+ * version. Gender was one column until FY2022 and is a set of yes/no columns
+ * since; getGender gives both as one comparable value.
+ *
+ * Race and gender values come from a FieldPool, so a schema is not thread
+ * safe; use one per reader.
+ *
+ * @author Keith Grable
+ * @version 2018-04-05
+ */
+public class HmisSchema {
+
+    /**
+     * The columns the loaders read, with their names in every spec version
+     */
+    public enum Column {
+        PERSONAL_ID("PersonalID"),
+        FIRST_NAME("FirstName"),
+        LAST_NAME("LastName"),
+        NAME_SUFFIX("NameSuffix"),
+        NAME_DATA_QUALITY("NameDataQuality"),
+        SSN("SSN"),
+        SSN_DATA_QUALITY("SSNDataQuality"),
+        DOB("DOB"),
+        DOB_DATA_QUALITY("DOBDataQuality"),
+        RACE_NONE("RaceNone"),
+        ENROLLMENT_ID("EnrollmentID", "ProjectEntryID"),
+        ENTRY_DATE("EntryDate"),
+        HOUSEHOLD_ID("HouseholdID"),
+        EXIT_DATE("ExitDate"),
+        DESTINATION("Destination"),
+        EXPORT_END_DATE("ExportEndDate");
+
+        private final String[] names;
+
+        private Column(String... names) {
+            this.names = names;
+        }
+    }
+
+    /**
+     * the race columns of every spec version, in the order of the FY2018 spec
+     * and then in the order they were added
+     */
+    private static final String[] RACE_COLUMNS = {
+        "AmIndAKNative", "Asian", "BlackAfAmerican", "NativeHIOtherPacific", "NativeHIPacific",
+        "White", "HispanicLatinaeo", "MidEastNAfrican"
+    };
+
+    /**
+     * the gender columns since FY2022, with the FY2018 gender code each
+     * means when it is the only one given
+     */
+    private static final String[][] GENDER_COLUMNS = {
+        {"Female", "0"}, {"Woman", "0"}, {"Male", "1"}, {"Man", "1"},
+        {"NoSingleGender", null}, {"NonBinary", null}, {"CulturallySpecific", null},
+        {"DifferentIdentity", null}, {"Transgender", null}, {"Questioning", null}
+    };
+
+    private final String fileName;
+
+    private final FieldPool pool = new FieldPool();
+
+    /**
+     * the index of each header name, in lower case
+     */
+    private final HashMap<String, Integer> indexes = new HashMap<>();
+
+    private final int[] raceIndexes;
+
+    /**
+     * the single gender column before FY2022, or -1
+     */
+    private final int genderIndex;
+
+    /**
+     * the gender columns since FY2022, -1 for those missing, or none at all
+     */
+    private final int[] genderIndexes;
+    private final int genderNoneIndex;
+
+    /**
+     * the highest index of a column that was asked for
+     */
+    private int lastIndex = -1;
+
+    /**
+     * Reads the header of a file
+     *
+     * @param reader a reader that has not read any record yet
+     * @param fileName the name of the file, for messages
+     */
+    public HmisSchema(HmisCsvReader reader, String fileName) {
+        this.fileName = fileName;
+        if (!reader.next()) {
+            throw new IllegalArgumentException(fileName + " has no header");
+        }
+        for (int i = 0; i < reader.getFieldCount(); i++) {
+            indexes.putIfAbsent(reader.getString(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+
+        int races = 0;
+        int[] raceFound = new int[RACE_COLUMNS.length];
+        for (String name : RACE_COLUMNS) {
+            Integer index = get(name);
+            if (index != null) {
+                raceFound[races++] = use(index);
+            }
+        }
+        raceIndexes = Arrays.copyOf(raceFound, races);
+
+        Integer gender = get("Gender");
+        genderIndex = gender == null ? -1 : use(gender);
+
+        int genders = 0;
+        int[] genderFound = new int[GENDER_COLUMNS.length];
+        for (int i = 0; i < GENDER_COLUMNS.length; i++) {
+            Integer index = get(GENDER_COLUMNS[i][0]);
+            genderFound[i] = index == null ? -1 : use(index);
+            genders += index == null ? 0 : 1;
+        }
+        genderIndexes = genders == 0 ? new int[0] : genderFound;
+        Integer genderNone = get("GenderNone");
+        genderNoneIndex = genderNone == null ? -1 : use(genderNone);
+    }
+
+    /**
+     * @return the index of the column with a header name, in any case, or
+     * null if there is none
+     */
+    private Integer get(String name) {
+        return indexes.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    private int use(int index) {
+        lastIndex = Math.max(lastIndex, index);
+        return index;
+    }
+
+    /**
+     * @return the index of a column
+     * @throws IllegalArgumentException if the file does not have the column
+     */
+    public int indexOf(Column column) {
+        for (String name : column.names) {
+            Integer index = get(name);
+            if (index != null) {
+                return use(index);
+            }
+        }
+        throw new IllegalArgumentException(fileName + " has no " + column.names[0] + " column");
+    }
+
+    /**
+     * @return the index of the last column asked for so far, so a reader can
+     * skip the rest of each record
+     */
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * @return the race columns of the current record, as one value
+     */
+    public String getRace(HmisCsvReader reader) {
+        return pool.get(reader, raceIndexes);
+    }
+
+    /**
+     * @return the gender of the current record: the Gender column before
+     * FY2022; since, the FY2018 code for a lone female or male answer, the
+     * GenderNone code if no gender is given, or otherwise the names of the
+     * gender columns that are 1
+     */
+    public String getGender(HmisCsvReader reader) {
+        if (genderIndex >= 0 || genderIndexes.length == 0) {
+            return genderIndex < 0 ? "" : pool.get(reader, genderIndex);
+        }
+
+        String code = null;
+        StringBuilder names = null;
+        int count = 0;
+        for (int i = 0; i < genderIndexes.length; i++) {
+            int index = genderIndexes[i];
+            if (index >= 0 && reader.getFieldLength(index) == 1 && reader.byteAt(index, 0) == '1') {
+                if (count++ == 0) {
+                    code = GENDER_COLUMNS[i][1];
+                    names = new StringBuilder(GENDER_COLUMNS[i][0]);
+                } else {
+                    names.append('|').append(GENDER_COLUMNS[i][0]);
+                }
+            }
+        }
+        if (count == 0) {
+            return genderNoneIndex < 0 ? "" : pool.get(reader, genderNoneIndex);
+        }
+        return count == 1 && code != null ? code : names.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package research;
+
+import java.util.Arrays;
+
+/**
+ * The households of every client, as sorted sets of household codes
+ *
+ * Household ids are interned into int codes as Enrollment.csv is read. A
+ * client may be enrolled in several households, and keeps all of them, so
+ * two clients share a household if their sets intersect, which one linear
+ * merge decides.
+ *
+ * Clients are kept by an index the caller gives each of them, from 0 up, as
+ * in StayIndex.
+ *
+ * @author Ting Liu, Keith Grable
+ * @version 2018-04-17
+ */
+public class HouseholdIndex {
+
+    /**
+     * households of a client who has none
+     */
+    public static final int[] NO_HOUSEHOLDS = new int[0];
+
+    /**
+     * the household id of an enrollment that has none
+     */
+    private static final String BLANK_ID = "\"\"";
+
+    private final StringDictionary householdIds = new StringDictionary();
+
+    /**
+     * the household codes of each client, by its index; null for a client
+     * with none
+     */
+    private Households[] households = new Households[1024];
+
+    private boolean sealed = false;
+
+    /**
+     * Adds the household of one enrollment of a client; blank household ids
+     * are ignored
+     */
+    public void add(int client, String householdId) {
+        if (sealed) {
+            throw new IllegalStateException("Households can not be added after sealing");
+        }
+        if (householdId.isEmpty() || BLANK_ID.equals(householdId)) {
+            return;
+        }
+
+        if (client >= households.length) {
+            households = Arrays.copyOf(households, Math.max(2 * households.length, client + 1));
+        }
+        if (households[client] == null) {
+            households[client] = new Households();
+        }
+        households[client].add(householdIds.encode(householdId));
+    }
+
+    /**
+     * Sorts the household codes of every client and removes repeats
+     */
+    public void seal() {
+        for (Households clientHouseholds : households) {
+            if (clientHouseholds != null) {
+                clientHouseholds.sort();
+            }
+        }
+        sealed = true;
+    }
+
+    /**
+     * @param client the index of the client, or -1 for a client that was
+     * given none
+     * @return the sorted, distinct household codes of a client
+     */
+    public int[] get(int client) {
+        if (!sealed) {
+            throw new IllegalStateException("Households must be sealed before reading");
+        }
+        if (client < 0 || client >= households.length || households[client] == null) {
+            return NO_HOUSEHOLDS;
+        }
+        return households[client].codes;
+    }
+
+    /**
+     * Determine if two clients were ever enrolled in the same household
+     *
+     * @param households1 sorted household codes of one client
+     * @param households2 sorted household codes of the other client
+     */
+    public static boolean shareHousehold(int[] households1, int[] households2) {
+        int i = 0, j = 0;
+        while (i < households1.length && j < households2.length) {
+            if (households1[i] < households2[j]) {
+                i++;
+            } else if (households2[j] < households1[i]) {
+                j++;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The household codes of one client
+     */
+    private static class Households {
+
+        private int[] codes = new int[1];
+        private int size = 0;
+
+        private void add(int code) {
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, 2 * size);
+            }
+            codes[size++] = code;
+        }
+
+        private void sort() {
+            Arrays.sort(codes, 0, size);
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                if (length == 0 || codes[i] != codes[length - 1]) {
+                    codes[length++] = codes[i];
+                }
+            }
+            codes = Arrays.copyOf(codes, length);
+            size = length;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package research;
+
+/**
+ * Rejects a pair in the same household
+ *
+ * If both entries were ever enrolled in the same non-empty household, then
+ * they are not the same client
+ *
+ * @author Ting Liu, Keith Grable
+ * @version 2018-03-28
+ */
+public class HouseholdRule implements MatchRule {
+
+    @Override
+    public String getName() {
+        return "household";
+    }
+
+    @Override
+    public boolean rejects(ClientPair pair) {
+        ClientTable table = pair.getTable();
+        return HouseholdIndex.shareHousehold(table.getHouseholds(pair.getNewClient()),
+                table.getHouseholds(pair.getClient()));
+    }
+}
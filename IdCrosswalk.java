@@ -0,0 +1,228 @@
+package research;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The new personal id of every old personal id, as a file other jobs can
+ * look ids up in without reading the output CSVs
+ *
+ * The binary file is a header of magic number, version, width and count,
+ * then one record per old id: the old id and then the new id, each as UTF-8
+ * padded with zero bytes to the width. Records are sorted by the bytes of the
+ * old id, so a reader maps the file and finds an id with a binary search,
+ * with nothing of the file on its heap. A CSV of PersonalID and NewPersonalID
+ * in the same order is written beside it.
+ *
+ * A reader is thread safe.
+ *
+ * @author Keith Grable
+ * @version 2018-04-14
+ */
+public class IdCrosswalk implements Closeable {
+
+    private static final long MAGIC = 0x484D49532058574BL;     //"HMIS XWK"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer records;
+
+    private final int width;
+    private final int count;
+
+    /**
+     * Maps a crosswalk file
+     */
+    public IdCrosswalk(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (records.limit() < HEADER_SIZE || records.getLong(0) != MAGIC || records.getInt(8) != VERSION) {
+                throw new IOException(file + " is not a crosswalk");
+            }
+            width = records.getInt(12);
+            long total = records.getLong(16);
+            if (width <= 0 || total < 0 || HEADER_SIZE + total * 2 * width != channel.size()) {
+                throw new IOException(file + " is not complete");
+            }
+            count = (int) total;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the new personal id of an old one, or null if it is not in the
+     * crosswalk; the output keeps the personal id of a client that was not
+     * matched, such as one with the special DoB
+     */
+    public String get(String personalId) {
+        byte[] key = personalId.getBytes(StandardCharsets.UTF_8);
+        if (key.length > width) {
+            return null;
+        }
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compare(HEADER_SIZE + (long) middle * 2 * width, key);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return read(HEADER_SIZE + (long) middle * 2 * width + width);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of old ids
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the old id of a record, in order of the bytes of the old ids
+     */
+    public String getOldId(int index) {
+        return read(HEADER_SIZE + (long) index * 2 * width);
+    }
+
+    /**
+     * @return the new id of a record
+     */
+    public String getNewId(int index) {
+        return read(HEADER_SIZE + (long) index * 2 * width + width);
+    }
+
+    /**
+     * Compares the padded id at a position with a key, as padded
+     */
+    private int compare(long position, byte[] key) {
+        int at = (int) position;
+        for (int i = 0; i < width; i++) {
+            int a = records.get(at + i) & 0xFF;
+            int b = i < key.length ? key[i] & 0xFF : 0;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    private String read(long position) {
+        int at = (int) position;
+        int length = 0;
+        while (length < width && records.get(at + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = records.get(at + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes a crosswalk and its CSV, replacing any old ones only once the
+     * new ones are complete
+     *
+     * @param oldIds the old personal ids, each once
+     * @param newIds the new personal id of each old one
+     * @return the CRC32 of the binary crosswalk
+     */
+    public static long write(File binary, File csv, String[] oldIds, String[] newIds) throws IOException {
+        int count = oldIds.length;
+        byte[][] oldBytes = new byte[count][];
+        byte[][] newBytes = new byte[count][];
+        int width = 1;
+        for (int i = 0; i < count; i++) {
+            oldBytes[i] = oldIds[i].getBytes(StandardCharsets.UTF_8);
+            newBytes[i] = newIds[i].getBytes(StandardCharsets.UTF_8);
+            width = Math.max(width, Math.max(oldBytes[i].length, newBytes[i].length));
+        }
+
+        //padding sorts before any byte, so shorter ids sort first as in the
+        //search
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareBytes(oldBytes[a], oldBytes[b]));
+
+        File binaryTemp = new File(binary.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(new FileOutputStream(binaryTemp), crc), 1 << 20))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeLong(count);
+            byte[] padding = new byte[width];
+            for (int i : order) {
+                out.write(oldBytes[i]);
+                out.write(padding, 0, width - oldBytes[i].length);
+                out.write(newBytes[i]);
+                out.write(padding, 0, width - newBytes[i].length);
+            }
+        }
+
+        File csvTemp = new File(csv.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(csvTemp), StandardCharsets.UTF_8), 1 << 20)) {
+            out.write("PersonalID,NewPersonalID\n");
+            for (int i : order) {
+                out.write(CsvRewriter.toField(oldIds[i]));
+                out.write(',');
+                out.write(CsvRewriter.toField(newIds[i]));
+                out.write('\n');
+            }
+        }
+
+        Files.move(binaryTemp.toPath(), binary.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(csvTemp.toPath(), csv.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return crc.getValue();
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int order = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,110 @@
+package research;
+
+import java.util.Arrays;
+
+/**
+ * A map of long keys to int values, without boxing either
+ *
+ * Keys and values are kept in two arrays with open addressing, so a million
+ * entries take 12 MB at most and no object per entry. Used to join files on
+ * ids that have been turned into numbers, where a HashMap of Strings would
+ * make three objects per row.
+ *
+ * @author Keith Grable
+ * @version 2018-04-11
+ */
+public class LongIntMap {
+
+    /**
+     * marks a free slot; the one key the map can not hold
+     */
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+
+    public LongIntMap() {
+        this(1024);
+    }
+
+    /**
+     * @param expected the number of entries expected, so the map does not
+     * have to grow
+     */
+    public LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, 2 * expected - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Maps a key to a value, replacing any value it had
+     */
+    public void put(long key, int value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Long.MIN_VALUE can not be a key");
+        }
+        if (2 * (size + 1) > keys.length) {
+            grow();
+        }
+        int slot = find(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @return the value of a key, or missing if it has none
+     */
+    public int get(long key, int missing) {
+        int slot = find(key);
+        return keys[slot] == key && key != FREE ? values[slot] : missing;
+    }
+
+    public boolean containsKey(long key) {
+        return key != FREE && keys[find(key)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of a key, or the free slot it would go in
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[2 * oldKeys.length];
+        values = new int[2 * oldValues.length];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of sequential ids over the table
+     */
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ key >>> 32);
+    }
+}
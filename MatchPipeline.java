@@ -0,0 +1,75 @@
+package research;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A match test: a list of rules, evaluated in order
+ *
+ * Rules should be ordered cheapest and most selective first, since the test
+ * stops at the first rule that rejects a pair. With diagnostics on, every
+ * rule is evaluated for every pair instead, so each count is the number of
+ * pairs the rule rejects on its own.
+ *
+ * @author Keith Grable
+ * @version 2018-03-28
+ */
+public class MatchPipeline {
+
+    private final String name;
+    private final MatchRule[] rules;
+    private final boolean diagnostics;
+
+    /**
+     * number of pairs rejected by each rule
+     */
+    private final LongAdder[] rejections;
+
+    /**
+     * @param name the name of the test, for diagnostics
+     * @param diagnostics if true, evaluate every rule for every pair
+     * @param rules the rules of the test, in the order to evaluate them
+     */
+    public MatchPipeline(String name, boolean diagnostics, MatchRule... rules) {
+        this.name = name;
+        this.rules = rules;
+        this.diagnostics = diagnostics;
+        rejections = new LongAdder[rules.length];
+        for (int r = 0; r < rules.length; r++) {
+            rejections[r] = new LongAdder();
+        }
+    }
+
+    /**
+     * Runs the test
+     *
+     * Safe to call from several threads
+     *
+     * @return true if a match is detected false if not
+     */
+    public boolean matches(ClientPair pair) {
+        boolean matchFailed = false;
+
+        for (int r = 0; r < rules.length; r++) {
+            if (rules[r].rejects(pair)) {
+                rejections[r].increment();
+                if (!diagnostics) {
+                    return false;
+                }
+                matchFailed = true;
+            }
+        }
+
+        return !matchFailed;
+    }
+
+    /**
+     * Prints how many pairs each rule rejected
+     */
+    public void printRejections() {
+        String rejected = diagnostics ? " rejected by " : " rejected first by ";
+        for (int r = 0; r < rules.length; r++) {
+            System.out.println("Pairs in " + name + rejected + rules[r].getName()
+                    + " = " + rejections[r].sum());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package research;
+
+/**
+ * A filter of a match test
+ *
+ * A match test is a list of rules. A pair of clients matches if no rule
+ * rejects it.
+ *
+ * @author Keith Grable
+ * @version 2018-03-28
+ */
+public interface MatchRule {
+
+    /**
+     * @return a short description of the rule, for diagnostics
+     */
+    String getName();
+
+    /**
+     * @param pair the clients being compared
+     *
+     * @return true if the rule rejects the pair as a match
+     */
+    boolean rejects(ClientPair pair);
+}
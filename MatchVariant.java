@@ -0,0 +1,109 @@
+package research;
+
+/**
+ * The versions of the algorithm we compare, which differ in the filters the
+ * two match tests use
+ *
+ * @author Hamza Memon, Keith Grable, Ting Liu
+ * @version 2018-03-28
+ */
+public enum MatchVariant {
+
+    /**
+     * test 1 compares first name and last name; test 2 checks for twins
+     *
+     * Test 1 was meant to compare DoB too, but the DoB of the new client was
+     * compared with the gender of the other, which is never equal.
+     */
+    ORIGINAL("original", "output-a-original/", false, false,
+            Client.FNAME | Client.LNAME),
+    /**
+     * as ORIGINAL, and test 1 also checks for twins
+     */
+    TWIN_CHECK_1("twincheck1", "output-b-twincheck1/", true, false,
+            Client.FNAME | Client.LNAME),
+    /**
+     * as TWIN_CHECK_1, and test 1 compares gender and month of birth instead
+     * of DoB
+     */
+    MOB_AND_GENDER("mob-and-gender", "output-c-mob-and-gender/", true, false,
+            Client.FNAME | Client.LNAME | Client.GENDER | Client.MONTH),
+    /**
+     * as MOB_AND_GENDER, and both tests reject stay and household conflicts
+     */
+    STAY_AND_HHID_CONFLICT("stay-and-hhid-conflict", "output-D(stay-hh-conflict)/", true, true,
+            Client.FNAME | Client.LNAME | Client.GENDER | Client.MONTH);
+
+    private final String name;
+    private final String outputPath;
+    private final boolean twinCheck1;
+    private final boolean conflictChecks;
+    private final int test1Fields;
+
+    private MatchVariant(String name, String outputPath, boolean twinCheck1,
+            boolean conflictChecks, int test1Fields) {
+        this.name = name;
+        this.outputPath = outputPath;
+        this.twinCheck1 = twinCheck1;
+        this.conflictChecks = conflictChecks;
+        this.test1Fields = test1Fields;
+    }
+
+    /**
+     * @return the variant with the given name, such as "original"
+     */
+    public static MatchVariant forName(String name) {
+        for (MatchVariant variant : values()) {
+            if (variant.name.equals(name)) {
+                return variant;
+            }
+        }
+        throw new IllegalArgumentException("Unknown variant: " + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Builds test 1, which requires matching ssns
+     *
+     * @param twins the clients grouped by last name and DoB
+     * @param diagnostics if true, evaluate every rule for every pair
+     */
+    public MatchPipeline createTest1(TwinIndex twins, boolean diagnostics) {
+        MatchRule ssn = new SsnMatchRule();
+        MatchRule fields = new FieldCountRule(test1Fields, 2);
+        MatchRule twin = new TwinRule(twins, true, false);
+
+        if (conflictChecks) {
+            return new MatchPipeline("T1", diagnostics, ssn, fields, twin,
+                    new HouseholdRule(), new StayConflictRule());
+        }
+        if (twinCheck1) {
+            return new MatchPipeline("T1", diagnostics, ssn, fields, twin);
+        }
+        return new MatchPipeline("T1", diagnostics, ssn, fields);
+    }
+
+    /**
+     * Builds test 2, which can match without ssns
+     *
+     * @param twins the clients grouped by last name and DoB
+     * @param diagnostics if true, evaluate every rule for every pair
+     */
+    public MatchPipeline createTest2(TwinIndex twins, boolean diagnostics) {
+        MatchRule fields = new FieldAgreementRule();
+        MatchRule twin = new TwinRule(twins, false, true);
+
+        if (conflictChecks) {
+            return new MatchPipeline("T2", diagnostics, fields, twin,
+                    new HouseholdRule(), new StayConflictRule());
+        }
+        return new MatchPipeline("T2", diagnostics, fields, twin);
+    }
+}
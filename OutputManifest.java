@@ -0,0 +1,188 @@
+package research;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The output files of a run that are complete, with the size and CRC32 of
+ * each, and the input files they were made from
+ *
+ * An output is recorded once it has been renamed into place, and the
+ * manifest itself is rewritten under a temporary name and renamed, so after
+ * a crash it lists only outputs that were complete. A run that resumes from
+ * it checks that the inputs have the same size and time, and skips the
+ * outputs that are still as recorded.
+ *
+ * The manifest is a CSV of Kind, File, Size and Check: for an INPUT the time
+ * it was modified, for an OUTPUT its CRC32 in hex.
+ *
+ * @author Keith Grable
+ * @version 2018-04-15
+ */
+public class OutputManifest {
+
+    private static final String HEADER = "Kind,File,Size,Check";
+
+    private static final int CRC_BUFFER_SIZE = 1 << 20;
+
+    private final File file;
+    private final File[] inputs;
+
+    /**
+     * the size and CRC32 of each complete output, by file name
+     */
+    private final LinkedHashMap<String, long[]> outputs = new LinkedHashMap<>();
+
+    /**
+     * @param file the manifest file
+     * @param inputs the files the outputs are made from
+     */
+    public OutputManifest(File file, File... inputs) {
+        this.file = file;
+        this.inputs = inputs;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the manifest of an earlier run
+     *
+     * @return false if there is none, or it was made from other inputs, in
+     * which case no output is complete
+     */
+    public synchronized boolean load() throws IOException {
+        outputs.clear();
+        if (!file.isFile()) {
+            return false;
+        }
+
+        LinkedHashMap<String, long[]> recorded = new LinkedHashMap<>();
+        LinkedHashMap<String, long[]> recordedInputs = new LinkedHashMap<>();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(in.readLine())) {
+                return false;
+            }
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] fields = line.split(",");
+                if (fields.length != 4) {
+                    return false;
+                }
+                long[] values;
+                try {
+                    values = new long[]{Long.parseLong(fields[2]), Long.parseUnsignedLong(fields[3], 16)};
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                if ("INPUT".equals(fields[0])) {
+                    recordedInputs.put(fields[1], values);
+                } else if ("OUTPUT".equals(fields[0])) {
+                    recorded.put(fields[1], values);
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        if (recordedInputs.size() != inputs.length) {
+            return false;
+        }
+        for (File input : inputs) {
+            long[] values = recordedInputs.get(input.getName());
+            if (values == null || values[0] != input.length() || values[1] != input.lastModified()) {
+                return false;
+            }
+        }
+        outputs.putAll(recorded);
+        return true;
+    }
+
+    /**
+     * Starts the manifest of a new run, in which no output is complete
+     */
+    public synchronized void reset() throws IOException {
+        outputs.clear();
+        save();
+    }
+
+    /**
+     * @return if an output is recorded as complete, and still has the size
+     * and CRC32 it was recorded with
+     */
+    public synchronized boolean isComplete(File output) throws IOException {
+        long[] values = outputs.get(output.getName());
+        return values != null && output.isFile() && output.length() == values[0] && crc32(output) == values[1];
+    }
+
+    /**
+     * Records an output that has been renamed into place
+     *
+     * @param crc32 the CRC32 of the output, worked out as it was written
+     */
+    public synchronized void complete(File output, long crc32) throws IOException {
+        outputs.put(output.getName(), new long[]{output.length(), crc32});
+        save();
+    }
+
+    /**
+     * Forgets an output, such as one that was deleted
+     */
+    public synchronized void remove(File output) throws IOException {
+        if (outputs.remove(output.getName()) != null) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            out.write(HEADER + "\n");
+            for (File input : inputs) {
+                out.write("INPUT," + input.getName() + "," + input.length() + ","
+                        + Long.toHexString(input.lastModified()) + "\n");
+            }
+            for (Map.Entry<String, long[]> output : outputs.entrySet()) {
+                out.write("OUTPUT," + output.getKey() + "," + output.getValue()[0] + ","
+                        + Long.toHexString(output.getValue()[1]) + "\n");
+            }
+        }
+        CsvRewriter.replace(temp, file);
+    }
+
+    /**
+     * @return the CRC32 of the bytes of a file
+     */
+    static long crc32(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CRC_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+}
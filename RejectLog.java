@@ -0,0 +1,163 @@
+package research;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Rows of the input that were not loaded, with the reason for each
+ *
+ * The loaders check every row before using it, with isComplete and their own
+ * checks of the values they read, and log the rows that fail rather than
+ * stopping at the first bad row. Each row is written to a CSV of file, byte
+ * offset, reason and the row itself as it is logged, so the log holds none of
+ * them, and the count of each reason is printed. The loaders share one log,
+ * so it is thread safe.
+ *
+ * @author Keith Grable
+ * @version 2018-04-09
+ */
+public class RejectLog implements Closeable {
+
+    /**
+     * Why a row was rejected
+     */
+    public enum Reason {
+        BLANK_LINE("blank line"),
+        TOO_FEW_FIELDS("too few fields"),
+        NO_PERSONAL_ID("no PersonalID"),
+        BAD_DOB("unreadable DOB"),
+        BAD_ENTRY_DATE("unreadable EntryDate"),
+        BAD_EXIT_DATE("unreadable ExitDate");
+
+        private final String description;
+
+        private Reason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final String HEADER = "File,Offset,Reason,Record\n";
+
+    private final long[] counts = new long[Reason.values().length];
+
+    private final File logFile;
+
+    /**
+     * the CSV, opened at the first rejected row
+     */
+    private Writer out;
+
+    /**
+     * @param logFile the CSV the rejected rows are written to
+     */
+    public RejectLog(File logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * Logs a rejected row
+     *
+     * @param file the name of the file of the row
+     * @param offset the byte offset of the row in the file
+     * @param record the row as it is in the file
+     */
+    public synchronized void reject(String file, long offset, Reason reason, String record) throws IOException {
+        counts[reason.ordinal()]++;
+        Writer out = open();
+        out.write(file);
+        out.write(',');
+        out.write(Long.toString(offset));
+        out.write(',');
+        out.write(reason.name());
+        out.write(",\"");
+        int start = 0;
+        for (int i = record.indexOf('"'); i >= 0; i = record.indexOf('"', i + 1)) {
+            out.write(record, start, i + 1 - start);
+            start = i;
+        }
+        out.write(record, start, record.length() - start);
+        out.write("\"\n");
+    }
+
+    /**
+     * Checks that the current row of a reader is not blank, has every column
+     * that is read and has a personal id, logging it if not
+     *
+     * @param file the name of the file being read
+     * @param columns the schema of the file, after every column was looked up
+     */
+    public boolean isComplete(String file, HmisCsvReader reader, HmisSchema columns, int personalIdColumn)
+            throws IOException {
+        Reason reason;
+        if (reader.isBlank()) {
+            reason = Reason.BLANK_LINE;
+        } else if (reader.getFieldCount() <= columns.getLastIndex()) {
+            reason = Reason.TOO_FEW_FIELDS;
+        } else if (reader.isEmpty(personalIdColumn)) {
+            reason = Reason.NO_PERSONAL_ID;
+        } else {
+            return true;
+        }
+        reject(file, reader.getRecordOffset(), reason, reader.getRecord());
+        return false;
+    }
+
+    /**
+     * @return the number of rows rejected for a reason
+     */
+    public synchronized long getCount(Reason reason) {
+        return counts[reason.ordinal()];
+    }
+
+    /**
+     * @return the number of rows rejected for any reason
+     */
+    public synchronized long getTotal() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Prints the count of each reason a row was rejected for
+     */
+    public synchronized void printCounts() {
+        for (Reason reason : Reason.values()) {
+            System.out.println("Rows rejected for " + reason.getDescription() + " = "
+                    + counts[reason.ordinal()]);
+        }
+    }
+
+    /**
+     * Finishes the CSV, which has only its header if no row was rejected
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        open().close();
+    }
+
+    private Writer open() throws IOException {
+        if (out == null) {
+            File parent = logFile.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            out = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(logFile), StandardCharsets.UTF_8));
+            out.write(HEADER);
+        }
+        return out;
+    }
+}
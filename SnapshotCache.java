@@ -0,0 +1,216 @@
+package research;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary snapshot of the client table after loading, so later runs on the
+ * same export can skip parsing the CSVs
+ *
+ * The snapshot holds the client columns with their stays, households and
+ * first entries, and is keyed by the size, modification time and content
+ * hash of each input file. A snapshot is used if every input has the same
+ * size and either the same modification time or the same content hash;
+ * otherwise the inputs are parsed again and the snapshot is rebuilt.
+ *
+ * @author Keith Grable
+ * @version 2018-04-06
+ */
+public class SnapshotCache {
+
+    private static final long MAGIC = 0x484D495320534E50L;     //"HMIS SNP"
+
+    /**
+     * change whenever the loaders keep other rows or values, or the snapshot
+     * layout changes, so old snapshots are not read
+     */
+    private static final int VERSION = 6;
+
+    private static final int HASH_WINDOW = 1 << 28;
+
+    private final File file;
+    private final File[] inputs;
+
+    /**
+     * @param file the snapshot file
+     * @param inputs the files the snapshot is built from
+     */
+    public SnapshotCache(File file, File... inputs) {
+        this.file = file;
+        this.inputs = inputs;
+    }
+
+    /**
+     * Reads the snapshot into an empty table, if it is up to date
+     *
+     * @return false if there is no snapshot for the current inputs, in which
+     * case the table is left empty
+     */
+    public boolean restore(ClientTable table) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return false;
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            //the magic number is written again at the end, once the rest is
+            if (in.limit() < 24 || in.getLong(in.limit() - 8) != MAGIC
+                    || in.getLong() != MAGIC || in.getInt() != VERSION || in.getInt() != inputs.length) {
+                return false;
+            }
+            for (File input : inputs) {
+                String name = readString(in);
+                long size = in.getLong(), modified = in.getLong(), hash = in.getLong();
+                if (!name.equals(input.getName()) || input.length() != size) {
+                    return false;
+                }
+                //a copy of the same export has a new time but the same content
+                if (input.lastModified() != modified && contentHash(input) != hash) {
+                    return false;
+                }
+            }
+
+            table.readFrom(in);
+            return true;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a table, replacing any old one only once the new
+     * one is complete
+     */
+    public void save(ClientTable table) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 20))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(inputs.length);
+            for (File input : inputs) {
+                writeString(out, input.getName());
+                out.writeLong(input.length());
+                out.writeLong(input.lastModified());
+                out.writeLong(contentHash(input));
+            }
+            table.writeTo(out);
+            out.writeLong(MAGIC);
+        }
+
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return a 64 bit hash of the bytes of a file
+     */
+    static long contentHash(File input) throws IOException {
+        long hash = 0x9E3779B97F4A7C15L;
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long offset = 0; offset < size; offset += HASH_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(HASH_WINDOW, size - offset));
+                while (window.remaining() >= 8) {
+                    hash = mix(hash ^ window.getLong());
+                }
+                while (window.hasRemaining()) {
+                    hash = mix(hash ^ window.get());
+                }
+            }
+            return mix(hash ^ size);
+        }
+    }
+
+    private static long mix(long x) {
+        x *= 0xBF58476D1CE4E5B9L;
+        return x ^ x >>> 31;
+    }
+
+    //
+    // COLUMN HELPERS FOR writeTo AND readFrom
+    //
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        byte[] chunk = new byte[1 << 15];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        for (int i = 0; i < count; i += chunk.length / 4) {
+            int length = Math.min(chunk.length / 4, count - i);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, i, length);
+            out.write(chunk, 0, 4 * length);
+        }
+    }
+
+    static int[] readInts(ByteBuffer in, int count, int capacity) {
+        int[] values = new int[capacity];
+        in.asIntBuffer().get(values, 0, count);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+
+    static void writeLongs(DataOutputStream out, long[] values, int count) throws IOException {
+        byte[] chunk = new byte[1 << 15];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        for (int i = 0; i < count; i += chunk.length / 8) {
+            int length = Math.min(chunk.length / 8, count - i);
+            buffer.clear();
+            buffer.asLongBuffer().put(values, i, length);
+            out.write(chunk, 0, 8 * length);
+        }
+    }
+
+    static long[] readLongs(ByteBuffer in, int count, int capacity) {
+        long[] values = new long[capacity];
+        in.asLongBuffer().get(values, 0, count);
+        in.position(in.position() + 8 * count);
+        return values;
+    }
+
+    static void writeShorts(DataOutputStream out, short[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeShort(values[i]);
+        }
+    }
+
+    static short[] readShorts(ByteBuffer in, int count, int capacity) {
+        short[] values = new short[capacity];
+        in.asShortBuffer().get(values, 0, count);
+        in.position(in.position() + 2 * count);
+        return values;
+    }
+
+    static byte[] readBytes(ByteBuffer in, int count, int capacity) {
+        byte[] values = new byte[capacity];
+        in.get(values, 0, count);
+        return values;
+    }
+}
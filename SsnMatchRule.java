@@ -0,0 +1,29 @@
+package research;
+
+/**
+ * Rejects a pair unless the SSNs are equal, full and valid
+ *
+ * @author Keith Grable
+ * @version 2018-03-28
+ */
+public class SsnMatchRule implements MatchRule {
+
+    @Override
+    public String getName() {
+        return "ssn";
+    }
+
+    @Override
+    public boolean rejects(ClientPair pair) {
+        return !hasSsnMatch(pair.getTable(), pair.getNewClient(), pair.getClient());
+    }
+
+    /**
+     * If SSNs are equal and SSN is not garbage based on spec
+     */
+    public static boolean hasSsnMatch(ClientTable table, int newClient, int client) {
+        return table.hasSameSsn(client, newClient) //codes are equal
+                && table.isFullSsn(client) //ssns are full //02/26/18 modified by TL by relacing "ssn" with current method
+                && table.isValidSsn(newClient); //ssns are valid numbers
+    }
+}
@@ -0,0 +1,343 @@
+package research;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A chain of stages joined by bounded queues, each stage on its own threads
+ *
+ * The first stage produces items, and each later stage takes the items of
+ * the stage before it. A full queue makes the stage feeding it wait, so no
+ * stage runs far ahead of the next. Items keep the order they were produced
+ * in: a stage with several threads may finish them out of order, and a stage
+ * with one thread puts them back in order before taking them.
+ *
+ * The items each stage handles and the time it spends on them are counted,
+ * so printThroughput shows which stage holds up the rest.
+ *
+ * @author Keith Grable
+ * @version 2018-04-10
+ */
+public class StagedPipeline {
+
+    /**
+     * The first stage, which makes the items
+     */
+    public interface Source<T> {
+
+        void produce(Output<T> out) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Where a source puts its items, waiting while the next queue is full
+     */
+    public interface Output<T> {
+
+        void put(T item) throws InterruptedException;
+    }
+
+    /**
+     * A middle stage, which turns each item into the item for the next stage,
+     * or into null to drop it
+     */
+    public interface Step<T, U> {
+
+        U apply(T item) throws IOException;
+    }
+
+    /**
+     * The last stage, which takes the items in order on one thread
+     */
+    public interface Sink<T> {
+
+        void accept(T item) throws IOException;
+    }
+
+    private static final Item END = new Item(Long.MAX_VALUE, null);
+
+    private static class Item {
+
+        private final long seq;
+        private final Object value;
+
+        private Item(long seq, Object value) {
+            this.seq = seq;
+            this.value = value;
+        }
+    }
+
+    private final String name;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile Throwable failure;
+
+    private long wallNanos;
+
+    /**
+     * @param name the name of the pipeline, for thread names and reports
+     */
+    public StagedPipeline(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Starts the chain with a stage that runs on one thread
+     */
+    public <T> Chain<T> source(String stageName, Source<T> source) {
+        Stage stage = new Stage(stageName, 1, 0, null);
+        stage.source = source;
+        stages.add(stage);
+        return new Chain<>(stage);
+    }
+
+    /**
+     * The end of the chain so far, which produces items of type T
+     */
+    public class Chain<T> {
+
+        private final Stage last;
+
+        private Chain(Stage last) {
+            this.last = last;
+        }
+
+        /**
+         * Adds a stage
+         *
+         * @param threads the number of threads of the stage
+         * @param queueDepth the number of items the queue into the stage holds
+         */
+        @SuppressWarnings("unchecked")
+        public <U> Chain<U> then(String stageName, int threads, int queueDepth, Step<T, U> step) {
+            Stage stage = new Stage(stageName, threads, queueDepth, last);
+            stage.step = (Step<Object, Object>) step;
+            stages.add(stage);
+            return new Chain<>(stage);
+        }
+
+        /**
+         * Ends the chain with a stage that runs on one thread
+         *
+         * @param queueDepth the number of items the queue into the stage holds
+         */
+        @SuppressWarnings("unchecked")
+        public void into(String stageName, int queueDepth, Sink<T> sink) {
+            Stage stage = new Stage(stageName, 1, queueDepth, last);
+            stage.sink = (Sink<Object>) sink;
+            stages.add(stage);
+        }
+    }
+
+    /**
+     * Runs every stage until the source is done and the last stage has taken
+     * every item
+     *
+     * @throws IOException if a stage does; a RuntimeException of a stage is
+     * thrown as it is
+     */
+    public void run() throws IOException {
+        long start = System.nanoTime();
+        for (Stage stage : stages) {
+            for (int i = 0; i < stage.threads; i++) {
+                Thread thread = new Thread(stage::work, name + "-" + stage.name + "-" + i);
+                threads.add(thread);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    fail(e);
+                }
+            }
+        }
+        wallNanos = System.nanoTime() - start;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new IOException(name + " was interrupted", failure);
+        }
+    }
+
+    /**
+     * Stops every stage after the first failure
+     */
+    private synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Prints the threads, queue depth, items and share of time busy of each
+     * stage, after run
+     */
+    public void printThroughput() {
+        double seconds = wallNanos / 1e9;
+        System.out.println(String.format("Pipeline %s took %.2f s", name, seconds));
+        for (Stage stage : stages) {
+            long items = stage.items.sum();
+            double busy = stage.busyNanos.sum() / (double) Math.max(1, wallNanos * stage.threads);
+            System.out.println(String.format("  %-10s threads %2d, queue %4s: %8d items, %5.1f%% busy, %10.0f items/s",
+                    stage.name, stage.threads, stage.queue == null ? "-" : Integer.toString(stage.queueDepth),
+                    items, 100 * busy, items / Math.max(seconds, 1e-9)));
+        }
+    }
+
+    private class Stage {
+
+        private final String name;
+        private final int threads;
+        private final int queueDepth;
+
+        /**
+         * the queue into this stage, and the stage that fills it
+         */
+        private final BlockingQueue<Item> queue;
+        private final Stage previous;
+
+        private Stage next;
+
+        private Source<?> source;
+        private Step<Object, Object> step;
+        private Sink<Object> sink;
+
+        private final AtomicInteger running;
+
+        private final LongAdder items = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        /**
+         * items that arrived ahead of their turn, for a stage with one thread
+         */
+        private final PriorityQueue<Item> early = new PriorityQueue<>(
+                Comparator.comparingLong((Item item) -> item.seq));
+        private long nextSeq = 0;
+
+        private Stage(String name, int threads, int queueDepth, Stage previous) {
+            this.name = name;
+            this.threads = Math.max(1, threads);
+            this.queueDepth = queueDepth;
+            this.previous = previous;
+            queue = previous == null ? null : new ArrayBlockingQueue<>(Math.max(1, queueDepth));
+            if (previous != null) {
+                previous.next = this;
+            }
+            running = new AtomicInteger(this.threads);
+        }
+
+        private void work() {
+            try {
+                if (source != null) {
+                    produce();
+                } else {
+                    consume();
+                }
+            } catch (InterruptedException e) {
+                fail(e);
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void produce() throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            long[] waited = {0};
+            long[] seq = {0};
+            ((Source<Object>) source).produce(value -> {
+                long before = System.nanoTime();
+                next.queue.put(new Item(seq[0]++, value));
+                waited[0] += System.nanoTime() - before;
+                items.increment();
+            });
+            busyNanos.add(System.nanoTime() - start - waited[0]);
+            next.queue.put(END);
+        }
+
+        private void consume() throws IOException, InterruptedException {
+            while (true) {
+                Item item = take();
+                if (item == END) {
+                    break;
+                }
+                //a dropped item is passed on as null, so the order has no gaps
+                long start = System.nanoTime();
+                if (sink != null) {
+                    if (item.value != null) {
+                        sink.accept(item.value);
+                        items.increment();
+                    }
+                    busyNanos.add(System.nanoTime() - start);
+                } else {
+                    Object result = item.value == null ? null : step.apply(item.value);
+                    busyNanos.add(System.nanoTime() - start);
+                    if (item.value != null) {
+                        items.increment();
+                    }
+                    next.queue.put(new Item(item.seq, result));
+                }
+            }
+
+            //the last thread of the stage tells the next stage it is done
+            if (running.decrementAndGet() == 0 && next != null) {
+                next.queue.put(END);
+            }
+        }
+
+        /**
+         * @return the next item, in order if the stage has one thread
+         */
+        private Item take() throws InterruptedException {
+            if (threads > 1) {
+                Item item = queue.take();
+                if (item == END) {
+                    queue.put(END);     //for the other threads of the stage
+                }
+                return item;
+            }
+            while (true) {
+                Item head = early.peek();
+                if (head != null && head.seq == nextSeq) {
+                    nextSeq++;
+                    return early.poll();
+                }
+                Item item = queue.take();
+                if (item == END) {
+                    return END;     //every item before it has been taken
+                }
+                early.add(item);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package research;
+
+/**
+ * Rejects a pair with a conflict in stay times at different projects
+ *
+ * If two clients were in different projects at the same time, then they
+ * cannot be duplicates
+ *
+ * @author Ting Liu, Keith Grable
+ * @version 2018-03-28
+ */
+public class StayConflictRule implements MatchRule {
+
+    @Override
+    public String getName() {
+        return "stay conflict";
+    }
+
+    @Override
+    public boolean rejects(ClientPair pair) {
+        return pair.hasStayConflict();
+    }
+}
@@ -0,0 +1,148 @@
+package research;
+
+import java.util.Arrays;
+
+/**
+ * The stays of every client in projects, as sorted, merged intervals of
+ * [entryEpochDay, exitEpochDay)
+ *
+ * Stays are added one enrollment at a time while Enrollment.csv is read, then
+ * sorted and merged once by seal. Two clients then have a stay conflict if
+ * any of their intervals overlap, which one linear merge decides.
+ *
+ * Clients are kept by an index the caller gives each of them, from 0 up, so
+ * the stays of a client are found without a String.
+ *
+ * @author Ting Liu, Keith Grable
+ * @version 2018-04-17
+ */
+public class StayIndex {
+
+    /**
+     * stays of a client who has none
+     */
+    public static final long[] NO_STAYS = new long[0];
+
+    /**
+     * the stays of each client as entry, exit, entry, exit, ..., by its
+     * index; null for a client with none
+     */
+    private Stays[] stays = new Stays[1024];
+
+    private boolean sealed = false;
+
+    /**
+     * Adds a stay of a client
+     *
+     * A stay that does not last at least a day covers no time, and so can
+     * not conflict with another stay
+     */
+    public void add(int client, long entryEpochDay, long exitEpochDay) {
+        if (sealed) {
+            throw new IllegalStateException("Stays can not be added after sealing");
+        }
+        if (exitEpochDay <= entryEpochDay) {
+            return;
+        }
+
+        if (client >= stays.length) {
+            stays = Arrays.copyOf(stays, Math.max(2 * stays.length, client + 1));
+        }
+        if (stays[client] == null) {
+            stays[client] = new Stays();
+        }
+        stays[client].add(entryEpochDay, exitEpochDay);
+    }
+
+    /**
+     * Sorts and merges the stays of every client
+     */
+    public void seal() {
+        for (Stays clientStays : stays) {
+            if (clientStays != null) {
+                clientStays.merge();
+            }
+        }
+        sealed = true;
+    }
+
+    /**
+     * @param client the index of the client, or -1 for a client that was
+     * given none
+     * @return the sorted, merged stays of a client as entry, exit, entry,
+     * exit, ...
+     */
+    public long[] get(int client) {
+        if (!sealed) {
+            throw new IllegalStateException("Stays must be sealed before reading");
+        }
+        if (client < 0 || client >= stays.length || stays[client] == null) {
+            return NO_STAYS;
+        }
+        return stays[client].bounds;
+    }
+
+    /**
+     * Determine if two clients have any conflicting stay time in distinct
+     * projects
+     *
+     * @param stays1 sorted, merged stays of one client
+     * @param stays2 sorted, merged stays of the other client
+     */
+    public static boolean hasConflict(long[] stays1, long[] stays2) {
+        int i = 0, j = 0;
+        while (i < stays1.length && j < stays2.length) {
+            if (stays1[i + 1] <= stays2[j]) {
+                i += 2;     // stay 1 ends before stay 2 starts
+            } else if (stays2[j + 1] <= stays1[i]) {
+                j += 2;     // stay 2 ends before stay 1 starts
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The stays of one client
+     */
+    private static class Stays {
+
+        private long[] bounds = new long[2];
+        private int size = 0;
+
+        private void add(long entry, long exit) {
+            if (size == bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * size);
+            }
+            bounds[size++] = entry;
+            bounds[size++] = exit;
+        }
+
+        /**
+         * Sorts the stays by entry and merges the ones that overlap
+         */
+        private void merge() {
+            int count = size / 2;
+            long[][] sorted = new long[count][];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = new long[]{bounds[2 * i], bounds[2 * i + 1]};
+            }
+            Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+
+            long[] merged = new long[size];
+            int length = 0;
+            for (long[] stay : sorted) {
+                if (length > 0 && stay[0] <= merged[length - 1]) {
+                    merged[length - 1] = Math.max(merged[length - 1], stay[1]);
+                } else {
+                    merged[length++] = stay[0];
+                    merged[length++] = stay[1];
+                }
+            }
+
+            bounds = Arrays.copyOf(merged, length);
+            size = length;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package research;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns each distinct string a small integer code, so a column of strings
+ * can be stored as a column of codes
+ *
+ * The blank string always has code 0.
+ *
+ * A dictionary is thread safe, so several threads can encode at once. A
+ * string that has a code is found without a lock; a new one is added under
+ * the lock, and gets the next code, so the codes follow the order the strings
+ * were first encoded in, which is not file order when several threads encode.
+ *
+ * @author Keith Grable
+ * @version 2018-03-24
+ */
+public class StringDictionary {
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private final ArrayList<String> values = new ArrayList<>();
+
+    public StringDictionary() {
+        encode("");
+    }
+
+    /**
+     * @return the code of the string, adding it if it is new
+     */
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    private synchronized int add(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            values.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * @return the code of the string, or -1 if it has not been encoded
+     */
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @return the string with the given code
+     */
+    public synchronized String decode(int code) {
+        return values.get(code);
+    }
+
+    /**
+     * @return the number of distinct strings
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Writes the strings in code order, for SnapshotCache
+     */
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            SnapshotCache.writeString(out, value);
+        }
+    }
+
+    /**
+     * Reads strings written by writeTo into an empty dictionary, so they get
+     * the same codes
+     */
+    void readFrom(ByteBuffer in) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            encode(SnapshotCache.readString(in));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package research;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Clients that could be twins: grouped by last name and DoB, with a flag for
+ * each client that was under 18 at first entry
+ *
+ * A twin check can only succeed for two clients in the same group, and only
+ * when the client whose age is checked was a minor, so both are worked out
+ * once per client rather than once per pair.
+ *
+ * @author Keith Grable
+ * @version 2018-03-31
+ */
+public class TwinIndex {
+
+    /**
+     * first entry of a client who has no enrollments
+     */
+    public static final int NO_ENTRY = Integer.MIN_VALUE;
+
+    private final StringDictionary lNames = new StringDictionary();
+
+    /**
+     * last name code and DoB of each row
+     */
+    private long[] keys = new long[1024];
+
+    private final BitSet minors = new BitSet();
+
+    private final HashMap<Long, Group> groups = new HashMap<>();
+
+    /**
+     * Adds a client
+     *
+     * @param row the row of the client; rows are added in order
+     * @param firstEntryEpochDay the epoch day of the client's first entry, or
+     * NO_ENTRY
+     */
+    public void add(int row, String lName, int dobEpochDay, int firstEntryEpochDay) {
+        add(row, lNames.encode(lName), dobEpochDay, firstEntryEpochDay);
+    }
+
+    /**
+     * Adds a client whose last name is already a dictionary code, such as a
+     * ClientTable code; an index takes either codes or names, not both
+     *
+     * @param row the row of the client; rows are added in order
+     * @param firstEntryEpochDay the epoch day of the client's first entry, or
+     * NO_ENTRY
+     */
+    public void add(int row, int lNameCode, int dobEpochDay, int firstEntryEpochDay) {
+        if (row >= keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(2 * keys.length, row + 1));
+        }
+        long key = (long) lNameCode << 32 | dobEpochDay & 0xFFFFFFFFL;
+        keys[row] = key;
+
+        // Age < 18
+        if (firstEntryEpochDay != NO_ENTRY
+                && dobEpochDay >= LocalDate.ofEpochDay(firstEntryEpochDay).minusYears(18).toEpochDay()) {
+            minors.set(row);
+        }
+
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group();
+            groups.put(key, group);
+        }
+        group.add(row);
+    }
+
+    /**
+     * If the client was under 18 at first entry
+     */
+    public boolean isMinorAtFirstEntry(int row) {
+        return minors.get(row);
+    }
+
+    /**
+     * If two clients have the same last name and DoB, and the first was under
+     * 18 at first entry
+     */
+    public boolean mayBeTwins(int row, int otherRow) {
+        return keys[row] == keys[otherRow] && minors.get(row);
+    }
+
+    /**
+     * @return the rows of all clients with the same last name and DoB as the
+     * client, the client included, in the order they were added
+     */
+    public int[] getGroup(int row) {
+        Group group = groups.get(keys[row]);
+        return Arrays.copyOf(group.rows, group.size);
+    }
+
+    /**
+     * The rows of the clients with one last name and DoB
+     */
+    private static class Group {
+
+        private int[] rows = new int[1];
+        private int size = 0;
+
+        private void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, 2 * size);
+            }
+            rows[size++] = row;
+        }
+    }
+}
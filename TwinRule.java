@@ -0,0 +1,55 @@
+package research;
+
+/**
+ * Rejects a pair that looks like twins: same last name and DoB, different
+ * first names, and under 18 at first entry
+ *
+ * @author Keith Grable, Ting Liu
+ * @version 2018-03-28
+ */
+public class TwinRule implements MatchRule {
+
+    private final TwinIndex twins;
+    private final boolean sameSsn;
+    private final boolean ageOfEarlierClient;
+
+    /**
+     * @param twins the clients grouped by last name and DoB
+     * @param sameSsn true if twins have the same ssn (test 1), false if they
+     * have different ssns (test 2)
+     * @param ageOfEarlierClient true if the age at first entry is taken from
+     * the earlier client of the pair, rather than the new client
+     */
+    public TwinRule(TwinIndex twins, boolean sameSsn, boolean ageOfEarlierClient) {
+        this.twins = twins;
+        this.sameSsn = sameSsn;
+        this.ageOfEarlierClient = ageOfEarlierClient;
+    }
+
+    @Override
+    public String getName() {
+        return "twin";
+    }
+
+    @Override
+    public boolean rejects(ClientPair pair) {
+        ClientTable table = pair.getTable();
+        int newClient = ageOfEarlierClient ? pair.getClient() : pair.getNewClient();
+        int client = ageOfEarlierClient ? pair.getNewClient() : pair.getClient();
+
+        // Same birthdays and last names, age < 18 at first entry
+        if (twins.mayBeTwins(newClient, client)) {
+            // Matching SSNs for test 1, different SSNs for test 2
+            if (table.hasSameSsn(newClient, client) == sameSsn) {
+                // Different first names
+                int equal = table.equalFields(newClient, client, Client.FNAME);
+                if (((table.getBlankFields(newClient) | table.getBlankFields(client) | equal)
+                        & Client.FNAME) == 0) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}